@@ -0,0 +1,113 @@
+package benchmarks;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import support.LatencyHistogram;
+import support.Song;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one frame in the decoding loop of the {@link support.PlaybackEngine}: reading the header, decoding
+ * the frame and closing it, through the same memory-mapped {@link Song#getInputStream(long)} used in playback.
+ * The stream is reopened when the fixture ends, which happens once every few thousand frames.<br>
+ * One frame is 26.1 ms of audio, so the real-time factor of the decoder is 26.1 ms divided by the score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dplayer.metadataCache=off")
+public class DecodeBenchmark {
+
+    private static final int FRAMES = 4096;
+
+    private Song song;
+    private Bitstream bitstream;
+    private Decoder decoder;
+    private final LatencyHistogram readFrame = new LatencyHistogram();
+    private final LatencyHistogram decodeFrame = new LatencyHistogram();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        song = Mp3Fixtures.song(Mp3Fixtures.temporary(FRAMES), FRAMES);
+        decoder = new Decoder();
+        bitstream = new Bitstream(song.getInputStream(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws JavaLayerException {
+        bitstream.close();
+    }
+
+    /**
+     * Reads, decodes and closes one frame.
+     */
+    @Benchmark
+    public SampleBuffer decodeFrame() throws JavaLayerException, IOException {
+        Header h = bitstream.readFrame();
+        if (h == null) {
+            rewind();
+            h = bitstream.readFrame();
+        }
+        SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+        bitstream.closeFrame();
+        return output;
+    }
+
+    /**
+     * {@link #decodeFrame()} with the timings recorded by the engine, to check they cost less than 1%.
+     */
+    @Benchmark
+    public SampleBuffer decodeFrameTimed() throws JavaLayerException, IOException {
+        long start = System.nanoTime();
+        Header h = bitstream.readFrame();
+        if (h == null) {
+            rewind();
+            h = bitstream.readFrame();
+        }
+        long read = System.nanoTime();
+        SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+        bitstream.closeFrame();
+        long decoded = System.nanoTime();
+        readFrame.record(read - start, decoded);
+        decodeFrame.record(decoded - read, decoded);
+        return output;
+    }
+
+    /**
+     * Reads and closes one frame without decoding it, as when skipping frames.
+     */
+    @Benchmark
+    public Header readFrame() throws JavaLayerException, IOException {
+        Header h = bitstream.readFrame();
+        if (h == null) {
+            rewind();
+            h = bitstream.readFrame();
+        }
+        bitstream.closeFrame();
+        return h;
+    }
+
+    private void rewind() throws JavaLayerException, IOException {
+        bitstream.close();
+        bitstream = new Bitstream(song.getInputStream(0));
+    }
+}
@@ -0,0 +1,121 @@
+package benchmarks;
+
+import support.Song;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Synthetic MP3 files for the benchmarks, so they run offline and on the same input everywhere.<br>
+ * Each file is a CBR MPEG-1 Layer III stream at 128 kbps and 44100 Hz stereo, between a 128-byte ID3v2 tag and
+ * an ID3v1 tag. Frames are 417 bytes, or 418 with padding, as an encoder would write them to average 417.96
+ * bytes per frame. Their side information and main data are zero, so they decode to silence, but the decoder
+ * still runs the whole synthesis for every granule.
+ */
+public final class Mp3Fixtures {
+
+    /**
+     * Duration of a frame, in milliseconds.
+     */
+    static final float MS_PER_FRAME = 1152 * 1000f / 44100;
+
+    private Mp3Fixtures() {
+    }
+
+    /**
+     * Writes a synthetic MP3 file, replacing it if it exists.
+     *
+     * @param file   File to be written.
+     * @param frames Number of audio frames.
+     * @param title  Title written in the ID3v1 tag.
+     * @return the file.
+     * @throws IOException if the file can't be written.
+     */
+    static Path write(Path file, int frames, String title) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            out.write(new byte[]{'I', 'D', '3', 3, 0, 0, 0, 0, 1, 0});
+            out.write(new byte[128]);
+
+            byte[] frame = new byte[418];
+            frame[0] = (byte) 0xFF;
+            frame[1] = (byte) 0xFB;
+            int remainder = 0;
+            for (int i = 0; i < frames; i++) {
+                remainder += 144 * 128000 % 44100;
+                int padding = remainder >= 44100 ? 1 : 0;
+                if (padding == 1) remainder -= 44100;
+                frame[2] = (byte) (0x90 | padding << 1);
+                out.write(frame, 0, 417 + padding);
+            }
+
+            out.write(id3v1(title, "Synthetic", "Benchmarks", "2024"));
+        }
+        return file;
+    }
+
+    /**
+     * Writes a synthetic MP3 file into a new temporary directory, deleted when the JVM exits.
+     *
+     * @param frames Number of audio frames.
+     * @return the file.
+     * @throws IOException if the file can't be written.
+     */
+    public static Path temporary(int frames) throws IOException {
+        Path directory = Files.createTempDirectory("mp3-fixtures");
+        Path file = write(directory.resolve(frames + ".mp3"), frames, frames + " frames");
+        file.toFile().deleteOnExit();
+        directory.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * @param file   Fixture written by {@link #write(Path, int, String)}.
+     * @param frames Number of audio frames of the fixture.
+     * @return a {@link Song} for the fixture, built without parsing it.
+     * @throws IOException if the size of the file can't be read.
+     */
+    public static Song song(Path file, int frames) throws IOException {
+        float msLength = frames * MS_PER_FRAME;
+        long seconds = (long) msLength / 1000;
+        String strLength = String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        return new Song(String.valueOf(frames), frames + " frames", "Benchmarks", "Synthetic", "2024", strLength, msLength, file.toString(), (int) Files.size(file), frames, MS_PER_FRAME);
+    }
+
+    private static byte[] id3v1(String title, String artist, String album, String year) {
+        byte[] tag = new byte[128];
+        tag[0] = 'T';
+        tag[1] = 'A';
+        tag[2] = 'G';
+        put(tag, 3, 30, title);
+        put(tag, 33, 30, artist);
+        put(tag, 63, 30, album);
+        put(tag, 93, 4, year);
+        tag[127] = (byte) 0xFF;     // no genre
+        return tag;
+    }
+
+    private static void put(byte[] tag, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(bytes, 0, tag, offset, Math.min(length, bytes.length));
+    }
+
+    /**
+     * Writes fixtures of the given numbers of frames into a directory, e.g. to try them in the player.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: Mp3Fixtures <directory> <frames>...");
+            return;
+        }
+        Path directory = Files.createDirectories(Path.of(args[0]));
+        for (String frames : Arrays.copyOfRange(args, 1, args.length)) {
+            Path file = write(directory.resolve(frames + ".mp3"), Integer.parseInt(frames), frames + " frames");
+            System.out.println(file);
+        }
+    }
+}
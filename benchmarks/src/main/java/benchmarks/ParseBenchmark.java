@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import support.Song;
+import support.SongParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to parse one file when it is imported, with the {@link support.MetadataCache} turned off so every call
+ * reads the file. With "-jvmArgsAppend -Dplayer.exactDuration=true", the length is counted with a full scan
+ * instead of estimated from the headers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dplayer.metadataCache=off")
+public class ParseBenchmark {
+
+    /**
+     * Length of the file, in frames: about 26 seconds, 4 minutes and 1 hour.
+     */
+    @Param({"1000", "10000", "140000"})
+    public int frames;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Mp3Fixtures.temporary(frames).toFile();
+    }
+
+    @Benchmark
+    public Song parse() {
+        return SongParser.parse(file);
+    }
+}
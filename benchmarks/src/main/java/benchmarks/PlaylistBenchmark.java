@@ -0,0 +1,93 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import support.Playlist;
+import support.Song;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Playlist} before ({@link BaselinePlaylist}) and after the UUID index, in the order songs were added
+ * and shuffled. Every remove is followed by an add, so the playlist keeps its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaylistBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean shuffled;
+
+    private BaselinePlaylist baseline;
+    private Playlist indexed;
+    private SplittableRandom random;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        baseline = new BaselinePlaylist();
+        indexed = new Playlist();
+        for (nextId = 0; nextId < size; nextId++) {
+            Song song = Songs.song(nextId);
+            baseline.add(song);
+            indexed.add(song);
+        }
+        if (shuffled) {
+            baseline.toggleShuffle(false);
+            indexed.toggleShuffle(false);
+        }
+        random = new SplittableRandom(42);
+    }
+
+    @Benchmark
+    public Song baselineGet() {
+        return baseline.get(random.nextInt(size));
+    }
+
+    @Benchmark
+    public Song indexedGet() {
+        return indexed.get(random.nextInt(size));
+    }
+
+    @Benchmark
+    public int baselineFindIndex() {
+        return baseline.findIndex(baseline.get(random.nextInt(size)).getUuid());
+    }
+
+    @Benchmark
+    public int indexedFindIndex() {
+        return indexed.findIndex(indexed.get(random.nextInt(size)).getUuid());
+    }
+
+    @Benchmark
+    public int baselineRemoveAndAdd() {
+        int result = baseline.remove(random.nextInt(size));
+        baseline.add(Songs.song(nextId++));
+        return result;
+    }
+
+    @Benchmark
+    public int indexedRemoveAndAdd() {
+        int result = indexed.remove(random.nextInt(size));
+        indexed.add(Songs.song(nextId++));
+        return result;
+    }
+}
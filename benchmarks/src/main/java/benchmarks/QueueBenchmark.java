@@ -0,0 +1,221 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+import support.Playlist;
+import support.QueueTableModel;
+import support.Song;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the queue operations done by the player, on the {@link Playlist} used by the player and on the four
+ * parallel lists it used before (songs and display rows, each in playing and in insertion order).<br>
+ * Every remove is followed by an add, so the queue keeps its size. The memory held by each structure is
+ * printed by {@link #main(String[])}.<br>
+ * The table benchmarks compare the row-level updates of {@link QueueTableModel} with the copy of every row
+ * that setQueueList made on each change before it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Playlist playlist;
+    private QueueTableModel tableModel;
+    private ParallelLists parallelLists;
+    private SplittableRandom random;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        playlist = new Playlist();
+        parallelLists = new ParallelLists();
+        for (nextId = 0; nextId < size; nextId++) {
+            Song song = Songs.song(nextId);
+            playlist.add(song);
+            parallelLists.add(song);
+        }
+        tableModel = new QueueTableModel(playlist);
+        random = new SplittableRandom(42);
+    }
+
+    @Benchmark
+    public Song playlistGet() {
+        return playlist.get(random.nextInt(size));
+    }
+
+    @Benchmark
+    public int playlistFindIndex() {
+        return playlist.findIndex(String.valueOf(random.nextInt(size)));
+    }
+
+    @Benchmark
+    public int playlistRemoveAndAdd() {
+        int result = playlist.remove(random.nextInt(size));
+        playlist.add(Songs.song(nextId++));
+        return result;
+    }
+
+    /**
+     * Shuffles keeping the current song first, reads the next song and undoes the shuffle.
+     */
+    @Benchmark
+    public Song playlistShuffleAndUnshuffle() {
+        playlist.toggleShuffle(true);
+        Song next = playlist.get(playlist.getNextIndex());
+        playlist.toggleShuffle(true);
+        return next;
+    }
+
+    /**
+     * Removes and adds a song, reporting each change to the table as the player does.
+     */
+    @Benchmark
+    public int tableModelRemoveAndAdd() {
+        int row = random.nextInt(size);
+        int result = playlist.remove(row);
+        tableModel.songRemoved(row);
+        playlist.add(Songs.song(nextId++));
+        tableModel.songsAdded(size - 1, size - 1);
+        return result;
+    }
+
+    /**
+     * Removes and adds a song, copying the rows of the whole queue after each change as setQueueList did.
+     */
+    @Benchmark
+    public String[][] setQueueListRemoveAndAdd() {
+        playlist.remove(random.nextInt(size));
+        playlist.getDisplayInfo();
+        playlist.add(Songs.song(nextId++));
+        return playlist.getDisplayInfo();
+    }
+
+    @Benchmark
+    public Song parallelListsGet() {
+        return parallelLists.queue.get(random.nextInt(size));
+    }
+
+    @Benchmark
+    public int parallelListsFindIndex() {
+        return parallelLists.findIndex(String.valueOf(random.nextInt(size)));
+    }
+
+    @Benchmark
+    public Song parallelListsRemoveAndAdd() {
+        Song removed = parallelLists.remove(random.nextInt(size));
+        parallelLists.add(Songs.song(nextId++));
+        return removed;
+    }
+
+    @Benchmark
+    public Song parallelListsShuffleAndUnshuffle() {
+        parallelLists.toggleShuffle(random.nextInt(size));
+        Song next = parallelLists.queue.get(1);
+        parallelLists.toggleShuffle(0);
+        return next;
+    }
+
+    /**
+     * Prints the bytes held by each structure, per song, excluding the songs themselves.
+     */
+    public static void main(String[] args) {
+        for (int size : new int[]{1_000, 100_000, 1_000_000}) {
+            List<Song> songs = new ArrayList<>(size);
+            Playlist playlist = new Playlist();
+            ParallelLists parallelLists = new ParallelLists();
+            for (int i = 0; i < size; i++) {
+                Song song = Songs.song(i);
+                songs.add(song);
+                playlist.add(song);
+                parallelLists.add(song);
+            }
+
+            long songBytes = GraphLayout.parseInstance(songs).totalSize();
+            long playlistBytes = GraphLayout.parseInstance(playlist, songs).totalSize() - songBytes;
+            long parallelListsBytes = GraphLayout.parseInstance(parallelLists, songs).totalSize() - songBytes;
+            System.out.printf("%,9d songs: Playlist %,6.1f B/song, parallel lists %,6.1f B/song%n",
+                    size, (double) playlistBytes / size, (double) parallelListsBytes / size);
+        }
+    }
+
+    /**
+     * The queue as the player kept it before {@link Playlist}.
+     */
+    static final class ParallelLists {
+        final ArrayList<String[]> songInfo = new ArrayList<>();
+        final ArrayList<Song> queue = new ArrayList<>();
+        final ArrayList<Song> unshuffledQueue = new ArrayList<>();
+        final ArrayList<String[]> unshuffledSongInfo = new ArrayList<>();
+        boolean shuffled;
+
+        void add(Song song) {
+            songInfo.add(song.getDisplayInfo());
+            queue.add(song);
+            unshuffledQueue.add(song);
+            unshuffledSongInfo.add(song.getDisplayInfo());
+        }
+
+        Song remove(int index) {
+            unshuffledQueue.remove(queue.get(index));
+            unshuffledSongInfo.remove(songInfo.get(index));
+            songInfo.remove(index);
+            return queue.remove(index);
+        }
+
+        /**
+         * Shuffles (keeping the current song first) or undoes the shuffle, as the player did.
+         */
+        void toggleShuffle(int current) {
+            if (shuffled) {
+                queue.clear();
+                songInfo.clear();
+                queue.addAll(unshuffledQueue);
+                songInfo.addAll(unshuffledSongInfo);
+            } else {
+                long seed = System.nanoTime();
+                unshuffledQueue.clear();
+                unshuffledSongInfo.clear();
+                unshuffledQueue.addAll(queue);
+                unshuffledSongInfo.addAll(songInfo);
+                queue.remove(current);
+                songInfo.remove(current);
+                Collections.shuffle(queue, new Random(seed));
+                Collections.shuffle(songInfo, new Random(seed));
+                queue.add(0, unshuffledQueue.get(current));
+                songInfo.add(0, unshuffledSongInfo.get(current));
+            }
+            shuffled = !shuffled;
+        }
+
+        int findIndex(String uuid) {
+            for (int i = 0; i < queue.size(); i++) {
+                if (queue.get(i).getUuid().equals(uuid)) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import support.AudioSink;
+import support.PlaybackEngine;
+import support.PlayerCommand;
+import support.PlayerCore;
+import support.Song;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a seek at different positions of a 7-minute song, through the SEEK command of a real
+ * {@link PlaybackEngine}, so it measures the engine's own skipToFrame: reopening the stream at the
+ * {@link support.FrameIndex} offset and decoding only the frames needed to fill the bit reservoir.<br>
+ * The song is paused, so the engine thread does nothing but apply the seeks, and the score includes handing
+ * the command to that thread and waiting for it, a few microseconds. The PCM cache is off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dplayer.metadataCache=off", "-Dplayer.pcmCacheMB=0"})
+public class SeekBenchmark {
+
+    private static final int FRAMES = 16384;
+
+    /**
+     * Target of the seek, as a fraction of the song.
+     */
+    @Param({"0.01", "0.5", "0.99"})
+    public double position;
+
+    private PlayerCore core;
+    private PlaybackEngine engine;
+    private int target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ExecutionException, InterruptedException {
+        Song song = Mp3Fixtures.song(Mp3Fixtures.temporary(FRAMES), FRAMES);
+        song.getFrameIndex();
+        core = new PlayerCore(AudioSink.discard());
+        engine = core.getEngine();
+        core.addSongs(List.of(song));
+        core.play(0).get();
+        core.pause().get();
+        if (core.getSongPlaying() == null) throw new IllegalStateException("the fixture ended before it was paused");
+        target = (int) (position * FRAMES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        core.close();
+    }
+
+    /**
+     * Seeks the paused song to the target and waits for the engine to apply it.
+     *
+     * @return the output position after the seek.
+     */
+    @Benchmark
+    public int seek() throws ExecutionException, InterruptedException {
+        engine.submit(PlayerCommand.Type.SEEK, target).get();
+        return engine.getPosition();
+    }
+}
@@ -0,0 +1,18 @@
+package benchmarks;
+
+import support.Song;
+
+/**
+ * Synthetic songs for the benchmarks. The UUID of each song is its number, so it can be looked up without
+ * keeping the songs around.
+ */
+final class Songs {
+
+    private Songs() {
+    }
+
+    static Song song(int number) {
+        return new Song(String.valueOf(number), "Title " + number, "Album " + number / 12, "Artist " + number / 120,
+                "2023", "0:03:00", 180_000f, "/music/" + number + ".mp3", 3_000_000, 6890, 26.122f);
+    }
+}
@@ -0,0 +1,138 @@
+package support;
+
+import benchmarks.Mp3Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady-state playback loop of the {@link PlaybackEngine}, to guard that it allocates nothing per frame: a real
+ * engine plays a song to {@link AudioSink#discard()}, its engine thread decoding frames into the ring and its
+ * output thread writing them to the device, and each operation waits for the engine to decode one more frame.<br>
+ * The song is read through a stream that loops over its frames forever, so it never ends and is never reopened.
+ * The benchmark is in the player's package to reach the constructor of the engine that takes that stream.<br>
+ * Run {@link #main(String[])} to run it with the GC profiler; it fails if {@code gc.alloc.rate.norm} is above
+ * {@value #MAX_BYTES_PER_FRAME} B/op, a single object every few hundred frames. JMH's own bookkeeping allocates
+ * a few kilobytes per iteration, which is spread over the hundreds of thousands of frames of an iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dplayer.metadataCache=off", "-Dplayer.pcmCacheMB=0"})
+public class FrameLoopBenchmark {
+
+    private static final int FRAMES = 1024;
+    /**
+     * Most bytes per frame the loop may allocate before {@link #main(String[])} fails.
+     */
+    private static final double MAX_BYTES_PER_FRAME = 0.05;
+
+    private TaskRuntime tasks;
+    private PlaybackEngine engine;
+    private long framesDecoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ExecutionException, InterruptedException {
+        Path file = Mp3Fixtures.temporary(FRAMES);
+        byte[] bytes = Files.readAllBytes(file);
+        // the frames, without the ID3v2 tag before them and the 128-byte ID3v1 tag after them
+        byte[] frames = Arrays.copyOfRange(bytes, FrameIndex.build(file.toString()).offsetOf(0), bytes.length - 128);
+
+        Playlist playlist = new Playlist();
+        playlist.add(Mp3Fixtures.song(file, FRAMES));
+        tasks = new TaskRuntime();
+        engine = new PlaybackEngine(playlist, AudioSink.discard(), tasks, (song, offset) -> new LoopingStream(frames));
+        engine.submit(PlayerCommand.Type.PLAY, 0).get();
+        framesDecoded = engine.getFramesDecoded();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+        tasks.close();
+    }
+
+    /**
+     * Waits for the engine to decode the next frame and hand it to the output thread.
+     */
+    @Benchmark
+    public long playFrame() {
+        long target = ++framesDecoded;
+        while (engine.getFramesDecoded() < target) Thread.onSpinWait();
+        return target;
+    }
+
+    /**
+     * Runs the benchmark with the GC profiler and fails if the loop allocates.
+     */
+    public static void main(String[] args) throws RunnerException {
+        RunResult run = new Runner(new OptionsBuilder()
+                .include(FrameLoopBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).runSingle();
+
+        for (Map.Entry<String, Result> result : run.getSecondaryResults().entrySet()) {
+            if (!result.getKey().endsWith("gc.alloc.rate.norm")) continue;
+            double bytesPerFrame = result.getValue().getScore();
+            System.out.printf("%nAllocated %.4f B/frame%n", bytesPerFrame);
+            if (bytesPerFrame > MAX_BYTES_PER_FRAME) {
+                throw new AssertionError(String.format("the playback loop allocates %.4f B/frame", bytesPerFrame));
+            }
+            return;
+        }
+        throw new AssertionError("the GC profiler reported no allocation rate");
+    }
+
+    /**
+     * Plays the same frames over and over, so the bitstream never ends and is never reopened.
+     */
+    private static final class LoopingStream extends InputStream {
+        private final byte[] frames;
+        private int position;
+
+        LoopingStream(byte[] frames) {
+            this.frames = frames;
+        }
+
+        @Override
+        public int read() {
+            int b = frames[position] & 0xFF;
+            position = (position + 1) % frames.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(len, frames.length - position);
+            System.arraycopy(frames, position, b, off, n);
+            position = (position + n) % frames.length;
+            return n;
+        }
+    }
+}
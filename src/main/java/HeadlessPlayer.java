@@ -0,0 +1,118 @@
+import support.AudioSink;
+import support.LibraryImport;
+import support.PlayerCore;
+import support.PlayerEvent;
+import support.PlayerMonitor;
+import support.QueueExport;
+import support.Song;
+import support.SongParser;
+import support.TaskRuntime;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Plays MP3 files without a window, on machines with no display or audio hardware (servers, CI, soak tests).
+ * Every file and folder in the arguments is queued and played once, in order.<br>
+ * The audio goes where the "player.audio" system property says, see {@link AudioSink#fromProperty(String)}.
+ * By default it is decoded as fast as possible and discarded, so the run also measures decoding throughput.<br>
+ * With "--export &lt;folder&gt;" before the files, the queue is rendered to WAV files in that folder instead of played,
+ * decoding several songs at the same time.
+ */
+public class HeadlessPlayer {
+
+    // o monitor só precisa ser fechado junto com o núcleo, não é usado dentro do try
+    @SuppressWarnings("try")
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: java Main --headless [--export <folder>] <files or folders>...");
+            return;
+        }
+        Path exportDirectory = null;
+        if (args[0].equals("--export") && args.length > 1) {
+            exportDirectory = Path.of(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        try (PlayerCore core = new PlayerCore(AudioSink.fromProperty("null"));
+             PlayerMonitor monitor = PlayerMonitor.register(core, null)) {
+            CountDownLatch stopped = new CountDownLatch(1);
+            core.addListener(event -> {
+                if (event.type() == PlayerEvent.Type.SONG_STARTED) {
+                    System.out.println("[" + (event.index() + 1) + "/" + core.getPlaylist().size() + "] "
+                            + event.song().getArtist() + " - " + event.song().getTitle());
+                    // o engine espera um comando quando a música não abre; sem ninguém para apertar "próxima", pula
+                    if (!core.isSongOpen()) core.next();
+                } else if (event.type() == PlayerEvent.Type.STOPPED) {
+                    stopped.countDown();
+                }
+            });
+
+            List<Song> songs = parse(LibraryImport.listMp3Files(toFiles(args)), core.getTasks().newScope("import"));
+            if (songs.isEmpty()) {
+                System.err.println("No MP3 files found.");
+                return;
+            }
+            core.addSongs(songs);
+            if (exportDirectory != null) {
+                export(core, exportDirectory);
+                return;
+            }
+
+            long start = System.nanoTime();
+            core.play(0);
+            stopped.await();
+            long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+            long playedMillis = core.getEngine().getPlayedMicros() / 1000;
+            System.out.printf("Played %,d ms of audio in %,d ms (%.1fx real time)%n",
+                    playedMillis, wallMillis, wallMillis == 0 ? 0 : (double) playedMillis / wallMillis);
+            System.out.printf("Gapless transitions: %d, with silence: %d, errors: %d%n",
+                    core.getEngine().getGaplessTransitions(), core.getEngine().getTransitionGaps(),
+                    core.getTasks().getErrors());
+            System.out.println(core.getEngine().getTimings().summary());
+        }
+    }
+
+    private static void export(PlayerCore core, Path directory) throws Exception {
+        QueueExport export = core.exportQueue(directory);
+        while (true) {
+            try {
+                QueueExport.Result result = export.getResult().get(500, TimeUnit.MILLISECONDS);
+                System.out.printf("Exported %d of %d songs to %s in %.1f s (%.1f audio seconds per second)%n",
+                        result.files().size(), export.getSongCount(), directory, result.wallSeconds(),
+                        result.audioSecondsPerSecond());
+                result.failures().forEach((song, error) ->
+                        System.err.println("Failed: " + song.getFilePath() + ": " + error.getMessage()));
+                return;
+            } catch (TimeoutException ex) {
+                // ainda exportando: mostra o progresso a cada meio segundo
+                System.out.printf("%5.1f%%  %d/%d songs  %.1f audio seconds per second%n", export.getProgress() * 100,
+                        export.getSongsDone(), export.getSongCount(), export.getAudioSecondsPerSecond());
+            }
+        }
+    }
+
+    private static File[] toFiles(String[] args) {
+        File[] files = new File[args.length];
+        for (int i = 0; i < args.length; i++) files[i] = new File(args[i]);
+        return files;
+    }
+
+    /**
+     * Parses the files on virtual threads, keeping their order. Files that can't be parsed are left out.
+     */
+    private static List<Song> parse(List<File> files, TaskRuntime.Scope scope) {
+        List<CompletableFuture<Song>> parsing = new ArrayList<>(files.size());
+        for (File file : files) parsing.add(CompletableFuture.supplyAsync(() -> SongParser.parse(file), scope));
+        return parsing.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+    }
+}
@@ -1,5 +1,17 @@
+import java.awt.GraphicsEnvironment;
+import java.util.Arrays;
+
 public class Main {
-    public static void main(String[] args) {
-        new Player();
+    public static void main(String[] args) throws Exception {
+        // sem tela (ou com --headless), toca os arquivos dos argumentos sem abrir a janela
+        boolean headlessFlag = args.length > 0 && args[0].equals("--headless");
+        if (headlessFlag || GraphicsEnvironment.isHeadless()) {
+            HeadlessPlayer.main(headlessFlag ? Arrays.copyOfRange(args, 1, args.length) : args);
+        } else {
+            Player player = new Player();
+            // fecha o dispositivo de áudio e cancela as tarefas quando o programa termina; registrado só depois
+            // que o Player está construído, para o hook nunca ver um Player pela metade
+            Runtime.getRuntime().addShutdownHook(new Thread(player::close));
+        }
     }
 }
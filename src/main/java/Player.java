@@ -1,363 +1,134 @@
-import javazoom.jl.decoder.*;
-import javazoom.jl.player.AudioDevice;
-import javazoom.jl.player.FactoryRegistry;
-import javazoom.jl.player.NullAudioDevice;
+import support.AudioSink;
+import support.LibraryImport;
+import support.LatencyStats;
+import support.LockStats;
+import support.PlaybackTimings;
+import support.PlayerMonitor;
+import support.PlayerCore;
+import support.PlayerEvent;
 import support.PlayerWindow;
+import support.Playlist;
+import support.QueueTableModel;
+import support.SongInput;
 import support.Song;
+import support.TaskRuntime;
 
-import javax.swing.*;
 import javax.swing.event.MouseInputAdapter;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Random;
-import java.util.concurrent.locks.ReentrantLock;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Player {
 
-    /**
-     * The MPEG audio bitstream.
-     */
-    private Bitstream bitstream;
-    /**
-     * The MPEG audio decoder.
-     */
-    private Decoder decoder;
-    /**
-     * The AudioDevice where audio samples are written to.
-     */
-    private AudioDevice device;
-
     private PlayerWindow window;
-    private int currentFrame = 0;
-    private int songIndex;
-    private Song songPlaying;
 
-    private ReentrantLock lock = new ReentrantLock();
-
-    // Estruturas que guardam informações das músicas na fila
-    private ArrayList<String[]> songInfo = new ArrayList<>();
-    private  ArrayList<Song> reproductionQueue = new ArrayList<>();
+    // Fila, engine e tarefas em segundo plano, sem nada de Swing; a janela é só mais um cliente do núcleo.
+    // O destino do áudio pode ser escolhido com a propriedade "player.audio"
+    private final PlayerCore core = new PlayerCore(AudioSink.fromProperty("system"));
+    private final Playlist playlist = core.getPlaylist();
+    // modelo da tabela da fila, lido diretamente da playlist
+    private final QueueTableModel queueModel = new QueueTableModel(playlist);
 
     // Variáveis de estado
-    private int playingState = 0;
-
-    private boolean nextSong = false;
-    private boolean previousSong = false;
-    private boolean stopMusic = false;
-    private boolean removeCurrentSong = false;
-    private boolean shuffle = false;
-    private boolean loop = false;
-    private boolean updatingScrubberDrag = false;
+    private volatile boolean updatingScrubberDrag = false;
 
     // Auxiliares
     int skipTime;
-    long randomSeed;    // variável usada para randomizacao da lista de reproducao
 
-    // Copias das listas originais de reproducao e de uuid
-    private  ArrayList<Song> unshuffledReproductionQueue = new ArrayList<>();
-    private ArrayList<String[]> unshuffledSongInfo = new ArrayList<>();
-
-    private Thread playerThread;
-    private Thread updateShuffledList;
-    private Thread updateScrubber;
-
-
-    private final ActionListener buttonListenerPlayNow = e -> {
-        if (playerThread != null) {
-            playerThread.interrupt();
-        }
-        playerThread = new Thread(() -> {
-            songIndex = this.window.getSelectedSongIndex();
-
-            while (songIndex < reproductionQueue.size() && !playerThread.isInterrupted()) {
-                lock.lock();
-                try {
-                    currentFrame = 0;
-                    playingState = 1;
-                } finally {
-                    lock.unlock();
-                }
-
-                songPlaying = reproductionQueue.get(songIndex);
-
-                lock.lock();
-                try {
-                    closeObjects();
-                    startObjects();
-                } finally {
-                    lock.unlock();
-                }
-
-                EventQueue.invokeLater(() -> {
-                    this.window.setPlayPauseButtonIcon(playingState);
-                    this.window.setEnabledPlayPauseButton(true);
-                    this.window.setEnabledStopButton(true);
-                    this.window.setEnabledScrubber(bitstream != null);
-                    this.window.setEnabledPreviousButton((bitstream != null) && (songIndex > 0 || loop));
-                    this.window.setEnabledNextButton((bitstream != null) && (songIndex < reproductionQueue.size() - 1 || loop));
-                    this.window.setEnabledShuffleButton(!reproductionQueue.isEmpty());
-                    this.window.setEnabledLoopButton(!reproductionQueue.isEmpty());
-                    this.window.setPlayingSongInfo(songPlaying.getTitle(), songPlaying.getAlbum(), songPlaying.getArtist());
-                });
-
-                boolean continuePlaying = currentFrame < songPlaying.getNumFrames();
-                while (continuePlaying && !playerThread.isInterrupted()) {
-                    if (playingState == 1) {
-                        lock.lock();
-                        try {
-                            continuePlaying = playNextFrame();
-                            currentFrame++;
-
-                            // para a reprodução após algum input externo
-                            if (stopMusic || removeCurrentSong || nextSong || previousSong) {
-                                continuePlaying = false;
-                            }
-                        } catch (JavaLayerException ex) {
-                            throw new RuntimeException(ex);
-                        } finally {
-                            lock.unlock();
-                        }
-                        EventQueue.invokeLater(() -> {
-                            this.window.setTime((currentFrame * (int) songPlaying.getMsPerFrame()), (int) songPlaying.getMsLength());
-                        });
-                    }
-                }
-
-                lock.lock();
-                try {
-                    if (stopMusic) {
-                        songIndex = reproductionQueue.size() + 1;
-                    } else if (nextSong) {
-                        if (loop && songIndex == reproductionQueue.size() - 1) {
-                            songIndex = 0;
-                        } else {
-                            songIndex++;
-                        }
-                    } else if (previousSong) {
-                        if (loop && songIndex == 0) {
-                            songIndex = reproductionQueue.size() - 1;
-                        } else {
-                            songIndex--;
-                        }
-                    } else if (!removeCurrentSong) {
-                        songIndex++;
-                    }
-
-                    previousSong = false;
-                    nextSong = false;
-                    removeCurrentSong = false;
-                    stopMusic = false;
-                    playingState = 0;
-
-                    if (loop && songIndex == reproductionQueue.size()) {
-                        songIndex = 0;
-                    }
-                } finally {
-                    lock.unlock();
-                }
-
-            }
-            resetDisplayInfo();
-        });
-        playerThread.start();
+    // posição mais recente do núcleo; só uma atualização fica pendente no EDT, sem criar um lambda por posição
+    private volatile int positionMillis;
+    private volatile int songLengthMillis;
+    private final AtomicBoolean timeUpdatePending = new AtomicBoolean();
+    private final Runnable updateTime = () -> {
+        timeUpdatePending.set(false);
+        this.window.setTime(positionMillis, songLengthMillis);
     };
 
-    private final ActionListener buttonListenerRemove = e -> {
-        int removedSong = this.window.getSelectedSongIndex();
-
-        if (removedSong == songIndex && playingState == 1) {      // remoção da música enquanto ela está sendo reproduzida
-            if (songIndex == reproductionQueue.size() - 1) {      // remoção da última música da lista
-                stopMusic = true;
-            } else {
-                removeCurrentSong = true;
-            }
-        } else if (songIndex > removedSong) {                      // arruma o index da música atual se uma música antes dela for removida
-            songIndex--;
-        }
+    private LibraryImport libraryImport;
+    private final TaskRuntime.Scope importScope = core.getTasks().newScope("import");
+    // estado e contadores do player no JMX (JConsole), em "mp3player:type=Player"
+    private final PlayerMonitor monitor = PlayerMonitor.register(core, importScope);
 
-        unshuffledReproductionQueue.remove(reproductionQueue.get(removedSong));
-        unshuffledSongInfo.remove(songInfo.get(removedSong));
 
-        reproductionQueue.remove(removedSong);
-        songInfo.remove(removedSong);
+    private final ActionListener buttonListenerPlayNow = e -> core.play(this.window.getSelectedSongIndex());
 
-        this.window.setEnabledNextButton(playingState == 1 && (songIndex < reproductionQueue.size() - 1 || loop));
-        this.window.setEnabledPreviousButton(playingState == 1 && (songIndex > 0 || loop));
-        this.window.setQueueList(songInfo.toArray(new String[0][])); // utiliza songInfo convertida de ArrayList para Array
-        this.window.setEnabledShuffleButton(!reproductionQueue.isEmpty());
-        this.window.setEnabledLoopButton(!reproductionQueue.isEmpty());
-    };
+    // a música é removida pelo engine; a tabela é atualizada quando ele emite SONG_REMOVED
+    private final ActionListener buttonListenerRemove = e -> core.remove(this.window.getSelectedSongIndex());
 
     private final ActionListener buttonListenerAddSong = e -> {
-        Song newSong = this.window.openFileChooser();
-        if (newSong != null) {
-            songInfo.add(newSong.getDisplayInfo());
-            reproductionQueue.add(newSong);
-
-            unshuffledReproductionQueue.add(newSong);
-            unshuffledSongInfo.add(newSong.getDisplayInfo());
-
-            this.window.setEnabledNextButton(playingState == 1 && (songIndex < reproductionQueue.size() - 1 || loop));
-            this.window.setEnabledPreviousButton(playingState == 1 && (songIndex > 0 || loop));
-            this.window.setQueueList(songInfo.toArray(new String[0][]));
-            this.window.setEnabledShuffleButton(!reproductionQueue.isEmpty());
-            this.window.setEnabledLoopButton(!reproductionQueue.isEmpty());
+        // enquanto uma importação está rodando, o botão a cancela
+        if (libraryImport != null && !libraryImport.isDone()) {
+            libraryImport.cancel(true);
+            return;
         }
-    };
 
-    private final ActionListener buttonListenerPlayPause = e -> {
-        switch (playingState) {
-            case 0 -> playingState = 1;
-            case 1 -> playingState = 0;
+        File[] selection = this.window.openImportChooser();
+        if (selection != null) {
+            libraryImport = new LibraryImport(selection, importScope, core::addSongs, this.window::resetImportProgress);
+            libraryImport.addPropertyChangeListener(event -> {
+                if ("progress".equals(event.getPropertyName())) this.window.setImportProgress((Integer) event.getNewValue());
+            });
+            this.window.setImportProgress(0);
+            libraryImport.execute();
         }
-
-        this.window.setPlayPauseButtonIcon(playingState);
-    };
-
-    private final ActionListener buttonListenerStop = e -> {
-        stopMusic = true;
     };
 
-    private final ActionListener buttonListenerNext = e -> {
-        nextSong = true;
-    };
-    private final ActionListener buttonListenerPrevious = e -> {
-        previousSong = true;
-    };
+    private final ActionListener buttonListenerPlayPause = e -> core.togglePlayPause();
 
-    private final ActionListener buttonListenerShuffle = e -> {
-        updateShuffledList = new Thread(() -> {
-            if (shuffle) {
-                lock.lock();
-                try {
-                    songIndex = unshuffledReproductionQueue.indexOf(reproductionQueue.get(songIndex));
+    private final ActionListener buttonListenerStop = e -> core.stop();
 
-                    reproductionQueue.clear();
-                    songInfo.clear();
+    private final ActionListener buttonListenerNext = e -> core.next();
 
-                    reproductionQueue.addAll(unshuffledReproductionQueue);
-                    songInfo.addAll(unshuffledSongInfo);
-                } finally {
-                    lock.unlock();
-                }
-                shuffle = false;
-            } else {
-                randomSeed = System.nanoTime();        // numero aleatorio
-
-                lock.lock();
-                try {
-                    unshuffledReproductionQueue.clear();
-                    unshuffledSongInfo.clear();
-
-                    unshuffledReproductionQueue.addAll(reproductionQueue);
-                    unshuffledSongInfo.addAll(songInfo);
-
-                    if (playingState == 1) {
-                        // remove a musica atual da lista de reproducao e, logo em seguida, a torna a primeira musica da lista em modo aleatorio
-                        reproductionQueue.remove(songIndex);
-                        songInfo.remove(songIndex);
-
-                        // randomiza lista de reproducao e lista de uuid com o mesmo numero aleatorio para que elas continuem sempre iguais
-                        Collections.shuffle(reproductionQueue, new Random(randomSeed));
-                        Collections.shuffle(songInfo, new Random(randomSeed));
-
-                        reproductionQueue.add(0, unshuffledReproductionQueue.get(songIndex));
-                        songInfo.add(0, unshuffledSongInfo.get(songIndex));
-                    } else {
-                        Collections.shuffle(reproductionQueue, new Random(randomSeed));
-                        Collections.shuffle(songInfo, new Random(randomSeed));
-                    }
-                    songIndex = 0;
-                } finally {
-                    lock.unlock();
-                }
-                shuffle = true;
-            }
+    private final ActionListener buttonListenerPrevious = e -> core.previous();
 
-            EventQueue.invokeLater(() -> {
-                this.window.setQueueList(songInfo.toArray(new String[0][]));
-                this.window.setEnabledNextButton(bitstream != null && (songIndex < reproductionQueue.size() - 1 || loop));
-                this.window.setEnabledPreviousButton(bitstream != null && (songIndex > 0 || loop));
-            });
-        });
-        updateShuffledList.start();
-    };
+    // se uma música está tocando, ela vira a primeira da ordem aleatória
+    private final ActionListener buttonListenerShuffle = e -> core.toggleShuffle();
 
-    private final ActionListener buttonListenerLoop = e -> {
-        loop = !loop;
-        this.window.setEnabledPreviousButton(playingState == 1 && (songIndex > 0 || loop));
-        this.window.setEnabledNextButton(playingState == 1 && (songIndex < reproductionQueue.size() - 1 || loop));
-        this.window.setEnabledLoopButton(!reproductionQueue.isEmpty());
-    };
+    private final ActionListener buttonListenerLoop = e -> core.toggleLooping();
 
     private final MouseInputAdapter scrubberMouseInputAdapter = new MouseInputAdapter() {
         @Override
         public void mouseReleased(MouseEvent e) {
-            updateScrubber = new Thread(() -> {
-                EventQueue.invokeLater(() -> {
-                    window.setTime(skipTime * (int) songPlaying.getMsPerFrame(), (int) songPlaying.getMsLength());
-                });
-
-                lock.lock();
-                try {
-                    if (skipTime < currentFrame) {
-                        closeObjects();
-                        startObjects();
-                        currentFrame = 0;
-                    }
-                    skipToFrame(skipTime);
-                    currentFrame = skipTime;
-                } catch (BitstreamException ex) {
-                    throw new RuntimeException(ex);
-                } finally {
-                    lock.unlock();
-                }
-
-            });
-            updateScrubber.start();
+            requestSeek();
         }
 
         @Override
         public void mousePressed(MouseEvent e) {
-            skipTime = (int) (window.getScrubberValue() / songPlaying.getMsPerFrame());
+            Song song = core.getSongPlaying();
+            if (song != null) skipTime = (int) (window.getScrubberValue() / song.getMsPerFrame());
         }
 
         @Override
         public void mouseDragged(MouseEvent e) {
-            skipTime = (int) (window.getScrubberValue() / songPlaying.getMsPerFrame());
-            updateScrubber = new Thread(() -> {
-                EventQueue.invokeLater(() -> {
-                    window.setTime(skipTime * (int) songPlaying.getMsPerFrame(), (int) songPlaying.getMsLength());
-                });
-
-                lock.lock();
-                try {
-                    if (skipTime < currentFrame) {
-                        closeObjects();
-                        startObjects();
-                        currentFrame = 0;
-                    }
-                    skipToFrame(skipTime);
-                    currentFrame = skipTime;
-                } catch (BitstreamException ex) {
-                    throw new RuntimeException(ex);
-                } finally {
-                    lock.unlock();
-                }
-            });
-            updateScrubber.start();
+            requestSeek();
+        }
+
+        // o núcleo aplica só o alvo mais recente; alvos intermediários do arraste são descartados
+        private void requestSeek() {
+            Song song = core.getSongPlaying();
+            if (song == null) return;
+            skipTime = (int) (window.getScrubberValue() / song.getMsPerFrame());
+            window.setTime(skipTime * (int) song.getMsPerFrame(), (int) song.getMsLength());
+            core.seek(skipTime);
         }
     };
 
     public Player() {
+        // os eventos chegam em threads do núcleo; a janela só é alterada no EDT
+        core.addListener(event -> EventQueue.invokeLater(() -> onPlayerEvent(event)));
+        core.addPositionListener((song, positionMillis) -> {
+            this.positionMillis = (int) positionMillis;
+            this.songLengthMillis = (int) song.getMsLength();
+            if (timeUpdatePending.compareAndSet(false, true)) EventQueue.invokeLater(updateTime);
+        });
+
         EventQueue.invokeLater(() -> window = new PlayerWindow(
                 "Music Player",
-                songInfo.toArray(new String[0][]),
+                queueModel,
                 buttonListenerPlayNow,
                 buttonListenerRemove,
                 buttonListenerAddSong,
@@ -371,81 +142,219 @@ public class Player {
         );
     }
 
-    //<editor-fold desc="Essential">
     /**
-     * @return False if there are no more frames to play.
+     * Stops playback and the running import, then cancels and waits for every background task.
      */
-    private boolean playNextFrame() throws JavaLayerException {
-        if (device != null) {
-            Header h = bitstream.readFrame();
-            if (h == null) return false;
-
-            SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
-            device.write(output.getBuffer(), 0, output.getBufferLength());
-            bitstream.closeFrame();
-        }
-        return true;
+    public void close() {
+        LibraryImport current = libraryImport;
+        if (current != null) current.cancel(true);
+        monitor.close();
+        core.close();
     }
 
     /**
-     * @return False if there are no more frames to skip.
+     * @return the number of decoded frames waiting to be written to the AudioDevice.
      */
-    private boolean skipNextFrame() throws BitstreamException {
-        Header h = bitstream.readFrame();
-        if (h == null) return false;
-        bitstream.closeFrame();
-        currentFrame++;
-        return true;
+    public int getBufferedFrames() {
+        return core.getEngine().getBufferedFrames();
     }
 
     /**
-     * Skips bitstream to the target frame if the new frame is higher than the current one.
-     *
-     * @param newFrame Frame to skip to.
+     * @return the maximum number of decoded frames that can wait to be written to the AudioDevice.
      */
-    private void skipToFrame(int newFrame) throws BitstreamException {
-        int framesToSkip = newFrame - currentFrame;
-        boolean condition = true;
-        while (framesToSkip-- > 0 && condition) condition = skipNextFrame();
+    public int getBufferCapacity() {
+        return core.getEngine().getBufferCapacity();
     }
 
-    private void startObjects () {
-        try {
-            device = FactoryRegistry.systemRegistry().createAudioDevice();
-            device.open(decoder = new Decoder());
-            bitstream = new Bitstream(songPlaying.getBufferedInputStream());
-        } catch (FileNotFoundException | JavaLayerException ignored) {
+    /**
+     * @return the time from a button being pressed to the playback engine having applied its command.
+     */
+    public LatencyStats getCommandLatency() {
+        return core.getEngine().getCommandLatency();
+    }
 
-        }
+    /**
+     * @return the number of seeks requested through the scrubber during the last full second.
+     */
+    public long getSeekRequestsPerSecond() {
+        return core.getSeekRequestsPerSecond();
+    }
+
+    /**
+     * @return the total number of seeks requested through the scrubber.
+     */
+    public long getSeekRequests() {
+        return core.getSeekRequests();
     }
 
-    private void closeObjects () {
-        try {
-            if (bitstream != null) {
-                bitstream.close();
-                device.close();
+    /**
+     * @return the number of seeks actually applied. Requests superseded by a newer one are not applied.
+     */
+    public long getSeeksExecuted() {
+        return core.getSeeksExecuted();
+    }
+
+    /**
+     * @return how long, in nanoseconds, the last song transition without user input took, from the last frame
+     * of the previous song being decoded to the first frame of the next one being buffered.
+     */
+    public long getLastTransitionNanos() {
+        return core.getEngine().getLastTransitionNanos();
+    }
+
+    /**
+     * @return the number of song transitions without user input.
+     */
+    public long getGaplessTransitions() {
+        return core.getEngine().getGaplessTransitions();
+    }
+
+    /**
+     * @return the number of song transitions without user input where the output ran out of frames,
+     * as in there was audible silence between the songs.
+     */
+    public long getTransitionGaps() {
+        return core.getEngine().getTransitionGaps();
+    }
+
+    /**
+     * @return the timings of the playback loop and the underruns of the output, over the last minute.
+     */
+    public PlaybackTimings getPlaybackTimings() {
+        return core.getEngine().getTimings();
+    }
+
+    /**
+     * @return the wait and hold times of the write lock of the queue.
+     */
+    public LockStats getQueueLockStats() {
+        return playlist.getLockStats();
+    }
+
+    /**
+     * @return the number of reads of the queue that were repeated under its lock because of a concurrent change.
+     */
+    public long getQueueOptimisticRetries() {
+        return playlist.getOptimisticRetries();
+    }
+
+    /**
+     * @return the number of background tasks running.
+     */
+    public int getActiveTasks() {
+        return core.getTasks().getActiveTasks();
+    }
+
+    /**
+     * @return the number of background tasks that finished normally.
+     */
+    public long getCompletedTasks() {
+        return core.getTasks().getCompletedTasks();
+    }
+
+    /**
+     * @return the number of errors reported by the background work, including the playback engine.
+     */
+    public long getBackgroundErrors() {
+        return core.getTasks().getErrors();
+    }
+
+    /**
+     * @return the number of files parsed per second by the current or last import, or 0 if there was none.
+     */
+    public double getImportFilesPerSecond() {
+        LibraryImport current = libraryImport;
+        return current == null ? 0 : current.getFilesPerSecond();
+    }
+
+    /**
+     * @return the amount of audio written to the AudioDevice so far, in milliseconds.
+     */
+    public long getPlayedMillis() {
+        return core.getEngine().getPlayedMicros() / 1000;
+    }
+
+    /**
+     * @param mode Input mode, see {@link SongInput}.
+     * @return the number of read syscalls per minute of played audio in the specified mode.
+     */
+    public double getReadCallsPerPlayedMinute(SongInput.Mode mode) {
+        return perPlayedMinute(SongInput.getReadCalls(mode));
+    }
+
+    /**
+     * @param mode Input mode, see {@link SongInput}.
+     * @return the number of bytes copied per minute of played audio in the specified mode.
+     */
+    public double getBytesCopiedPerPlayedMinute(SongInput.Mode mode) {
+        return perPlayedMinute(SongInput.getBytesCopied(mode));
+    }
+
+    private double perPlayedMinute(long count) {
+        long micros = core.getEngine().getPlayedMicros();
+        return micros == 0 ? 0 : count * 60_000_000.0 / micros;
+    }
+
+    //<editor-fold desc="Essential">
+    /**
+     * Updates the window after a state change of the player core. Called on the Event Dispatch Thread.
+     *
+     * @param event State change emitted by the core.
+     */
+    private void onPlayerEvent(PlayerEvent event) {
+        switch (event.type()) {
+            case SONG_STARTED -> {
+                Song song = event.song();
+                this.window.setPlayPauseButtonIcon(core.getPlayingState());
+                this.window.setEnabledPlayPauseButton(true);
+                this.window.setEnabledStopButton(true);
+                this.window.setEnabledScrubber(core.isSongOpen());
+                this.window.setEnabledPreviousButton(core.isSongOpen() && playlist.hasPrevious());
+                this.window.setEnabledNextButton(core.isSongOpen() && playlist.hasNext());
+                this.window.setEnabledShuffleButton(!playlist.isEmpty());
+                this.window.setEnabledLoopButton(!playlist.isEmpty());
+                this.window.setPlayingSongInfo(song.getTitle(), song.getAlbum(), song.getArtist());
+            }
+            case PLAYING, PAUSED -> this.window.setPlayPauseButtonIcon(core.getPlayingState());
+            case STOPPED -> resetDisplayInfo();
+            case SONGS_ADDED, SONG_REMOVED -> {
+                if (event.type() == PlayerEvent.Type.SONGS_ADDED) {
+                    queueModel.songsAdded(event.index(), event.index() + event.count() - 1);
+                } else {
+                    queueModel.songRemoved(event.index());
+                }
+                this.window.setEnabledNextButton(core.getPlayingState() == 1 && playlist.hasNext());
+                this.window.setEnabledPreviousButton(core.getPlayingState() == 1 && playlist.hasPrevious());
+                this.window.setEnabledShuffleButton(!playlist.isEmpty());
+                this.window.setEnabledLoopButton(!playlist.isEmpty());
+            }
+            case QUEUE_REORDERED -> {
+                queueModel.queueReordered();
+                this.window.setEnabledNextButton(core.isSongOpen() && playlist.hasNext());
+                this.window.setEnabledPreviousButton(core.isSongOpen() && playlist.hasPrevious());
+            }
+            case LOOP_CHANGED -> {
+                this.window.setEnabledPreviousButton(core.getPlayingState() == 1 && playlist.hasPrevious());
+                this.window.setEnabledNextButton(core.getPlayingState() == 1 && playlist.hasNext());
+                this.window.setEnabledLoopButton(!playlist.isEmpty());
             }
-        } catch (BitstreamException ex) {
-            throw new RuntimeException(ex);
         }
     }
 
     private void resetDisplayInfo () {
-        EventQueue.invokeLater(() -> {
-            this.window.setPlayPauseButtonIcon(playingState);
-            this.window.setEnabledPlayPauseButton(false);
-            this.window.setEnabledStopButton(false);
-            this.window.setEnabledScrubber(false);
-            this.window.setEnabledPreviousButton(false);
-            this.window.setEnabledNextButton(false);
-            this.window.setEnabledShuffleButton(!reproductionQueue.isEmpty());
-            this.window.setEnabledLoopButton(!reproductionQueue.isEmpty());
-            this.window.resetMiniPlayer();
-        });
+        this.window.setPlayPauseButtonIcon(core.getPlayingState());
+        this.window.setEnabledPlayPauseButton(false);
+        this.window.setEnabledStopButton(false);
+        this.window.setEnabledScrubber(false);
+        this.window.setEnabledPreviousButton(false);
+        this.window.setEnabledNextButton(false);
+        this.window.setEnabledShuffleButton(!playlist.isEmpty());
+        this.window.setEnabledLoopButton(!playlist.isEmpty());
+        this.window.resetMiniPlayer();
     }
 
 
 
 
     //</editor-fold>
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+package support;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+import javazoom.jl.player.FactoryRegistry;
+import javazoom.jl.player.NullAudioDevice;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where the {@link PlaybackEngine} writes decoded audio. A new AudioDevice is created whenever the format of
+ * the audio changes, so a sink may be asked for several devices during playback.
+ */
+@FunctionalInterface
+public interface AudioSink {
+
+    /**
+     * @param frequency Sample rate of the audio, in Hz.
+     * @param channels  Number of channels of the audio.
+     * @return a new, not yet opened AudioDevice.
+     * @throws JavaLayerException if the device can't be created.
+     */
+    AudioDevice createDevice(int frequency, int channels) throws JavaLayerException;
+
+    /**
+     * @return the sound card, through jlayer's system {@link FactoryRegistry}.
+     */
+    static AudioSink system() {
+        return (frequency, channels) -> FactoryRegistry.systemRegistry().createAudioDevice();
+    }
+
+    /**
+     * @return a sink that discards the audio as fast as it is decoded, for machines without audio hardware.
+     */
+    static AudioSink discard() {
+        return (frequency, channels) -> new NullAudioDevice();
+    }
+
+    /**
+     * Writes the audio to a WAV file. Since a WAV file has a single format, every device after the first one
+     * writes to a sibling file with a number appended to its name, e.g. "out-2.wav".
+     *
+     * @param path File written by the first device.
+     * @return a sink that writes WAV files.
+     */
+    static AudioSink wavFile(Path path) {
+        AtomicInteger devices = new AtomicInteger();
+        return (frequency, channels) -> {
+            int number = devices.incrementAndGet();
+            Path target = path;
+            if (number > 1) {
+                String name = path.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                String numbered = dot < 0 ? name + "-" + number : name.substring(0, dot) + "-" + number + name.substring(dot);
+                target = path.resolveSibling(numbered);
+            }
+            return new WavFileAudioDevice(target, frequency, channels);
+        };
+    }
+
+    /**
+     * Chooses the sink with the "player.audio" system property: "system" for the sound card, "null" to discard
+     * the audio, or "wav:" followed by the path of a WAV file.
+     *
+     * @param defaultValue Value used when the property is not set.
+     * @return the chosen sink.
+     * @throws IllegalArgumentException if the value is none of the above.
+     */
+    static AudioSink fromProperty(String defaultValue) {
+        String value = System.getProperty("player.audio", defaultValue);
+        if (value.equals("system")) return system();
+        if (value.equals("null")) return discard();
+        if (value.startsWith("wav:")) return wavFile(Path.of(value.substring("wav:".length())));
+        throw new IllegalArgumentException("player.audio must be system, null or wav:<path>: " + value);
+    }
+}
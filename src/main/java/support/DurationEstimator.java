@@ -0,0 +1,169 @@
+package support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimates the number of frames and the length of an MP3 file from its headers, reading only the ID3v2 tag
+ * header, the first few KB of audio and the last 128 bytes of the file, instead of every frame.<br>
+ * The frame count comes from the Xing/Info header (with the LAME encoder delay and padding, when present) or
+ * the VBRI header. Files without them are assumed to be CBR and estimated from the first frame header and the
+ * size of the audio data, as long as the first frames all have the same bitrate. Otherwise, the file needs a
+ * full scan and {@link #estimate(File)} returns null.
+ *
+ * @see SongParser
+ */
+public final class DurationEstimator {
+
+    /**
+     * Frame count and length estimated for a file.
+     *
+     * @param numFrames  Number of frames as decoded by the player, including a Xing/Info or VBRI frame.
+     * @param msLength   Length in milliseconds.
+     * @param msPerFrame Number of milliseconds per frame.
+     */
+    public record Estimate(int numFrames, float msLength, float msPerFrame) {
+    }
+
+    private static final int PROBE_BYTES = 16 * 1024;
+    private static final int CBR_PROBE_FRAMES = 8;
+    private static final int XING = 0x58696E67;     // "Xing"
+    private static final int INFO = 0x496E666F;     // "Info"
+    private static final int VBRI = 0x56425249;     // "VBRI"
+    private static final int LAME = 0x4C414D45;     // "LAME"
+
+    private static final LongAdder BYTES_READ = new LongAdder();
+
+    private DurationEstimator() {
+    }
+
+    /**
+     * Estimates the frame count and the length of an MP3 file.
+     *
+     * @param file MP3 file.
+     * @return the estimate, or null if the file needs a full scan (VBR without a Xing/Info or VBRI header,
+     * or no frames found in the first KB of audio).
+     * @throws IOException if the file can't be read.
+     */
+    public static Estimate estimate(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long audioStart = id3v2Size(channel);
+            long audioEnd = size - (hasId3v1(channel, size) ? 128 : 0);
+            if (audioEnd - audioStart < FrameHeader.SIZE) return null;
+
+            ByteBuffer probe = read(channel, audioStart, (int) Math.min(PROBE_BYTES, audioEnd - audioStart));
+            int first = findFirstFrame(probe);
+            if (first < 0) return null;
+
+            int header = probe.getInt(first);
+            int samplesPerFrame = FrameHeader.samplesPerFrame(header);
+            int sampleRate = FrameHeader.sampleRate(header);
+            float msPerFrame = samplesPerFrame * 1000f / sampleRate;
+
+            Estimate vbr = fromVbrHeader(probe, first, header, msPerFrame, samplesPerFrame, sampleRate);
+            if (vbr != null) return vbr;
+            if (!isConstantBitrate(probe, first, header)) return null;
+
+            float bytesPerFrame = FrameHeader.bitrate(header) * 1000f / 8 * samplesPerFrame / sampleRate;
+            int numFrames = Math.round((audioEnd - audioStart - first) / bytesPerFrame);
+            return new Estimate(numFrames, numFrames * msPerFrame, msPerFrame);
+        }
+    }
+
+    /**
+     * @return the number of bytes read from files by {@link #estimate(File)}.
+     */
+    public static long getBytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    private static Estimate fromVbrHeader(ByteBuffer probe, int first, int header, float msPerFrame,
+                                          int samplesPerFrame, int sampleRate) {
+        if (!FrameHeader.isLayer3(header)) return null;
+
+        int xing = first + FrameHeader.SIZE + (FrameHeader.hasCrc(header) ? 2 : 0) + FrameHeader.sideInfoSize(header);
+        if (xing + 12 <= probe.limit() && (probe.getInt(xing) == XING || probe.getInt(xing) == INFO)) {
+            int flags = probe.getInt(xing + 4);
+            if ((flags & 0x1) == 0) return null;
+            int frames = probe.getInt(xing + 8);
+            if (frames <= 0) return null;
+
+            long samples = (long) frames * samplesPerFrame;
+            int lame = xing + 8 + 4 + ((flags & 0x2) != 0 ? 4 : 0) + ((flags & 0x4) != 0 ? 100 : 0) + ((flags & 0x8) != 0 ? 4 : 0);
+            if (lame + 24 <= probe.limit() && probe.getInt(lame) == LAME) {
+                // 12 bits of encoder delay followed by 12 bits of padding, in samples.
+                int delayAndPadding = ((probe.get(lame + 21) & 0xFF) << 16) | ((probe.get(lame + 22) & 0xFF) << 8) | (probe.get(lame + 23) & 0xFF);
+                samples -= (delayAndPadding >>> 12) + (delayAndPadding & 0xFFF);
+            }
+            // The Xing/Info frame itself is decoded as a silent frame.
+            return new Estimate(frames + 1, Math.max(0, samples) * 1000f / sampleRate, msPerFrame);
+        }
+
+        int vbri = first + FrameHeader.SIZE + 32;
+        if (vbri + 18 <= probe.limit() && probe.getInt(vbri) == VBRI) {
+            int frames = probe.getInt(vbri + 14);
+            if (frames <= 0) return null;
+            return new Estimate(frames + 1, frames * msPerFrame, msPerFrame);
+        }
+        return null;
+    }
+
+    private static boolean isConstantBitrate(ByteBuffer probe, int first, int header) {
+        int bitrate = FrameHeader.bitrate(header);
+        int position = first;
+        for (int i = 0; i < CBR_PROBE_FRAMES && position + FrameHeader.SIZE <= probe.limit(); i++) {
+            int next = probe.getInt(position);
+            if (!FrameHeader.isValid(next) || FrameHeader.bitrate(next) != bitrate) return false;
+            position += FrameHeader.frameSize(next);
+        }
+        return true;
+    }
+
+    /**
+     * @return the position of the first valid frame header that is followed by another valid header
+     * (or by the end of the probe), or -1 if there is none.
+     */
+    private static int findFirstFrame(ByteBuffer probe) {
+        for (int i = 0; i + FrameHeader.SIZE <= probe.limit(); i++) {
+            int header = probe.getInt(i);
+            if (!FrameHeader.isValid(header)) continue;
+            int next = i + FrameHeader.frameSize(header);
+            if (next + FrameHeader.SIZE > probe.limit()) return i;
+            int nextHeader = probe.getInt(next);
+            if (FrameHeader.isValid(nextHeader) && FrameHeader.sampleRate(nextHeader) == FrameHeader.sampleRate(header)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long id3v2Size(FileChannel channel) throws IOException {
+        if (channel.size() < 10) return 0;
+        ByteBuffer tag = read(channel, 0, 10);
+        if (tag.get(0) != 'I' || tag.get(1) != 'D' || tag.get(2) != '3') return 0;
+        int size = ((tag.get(6) & 0x7F) << 21) | ((tag.get(7) & 0x7F) << 14) | ((tag.get(8) & 0x7F) << 7) | (tag.get(9) & 0x7F);
+        if ((tag.get(5) & 0x10) != 0) size += 10;   // footer
+        return Math.min(channel.size(), 10L + size);
+    }
+
+    private static boolean hasId3v1(FileChannel channel, long size) throws IOException {
+        if (size < 128) return false;
+        ByteBuffer tag = read(channel, size - 128, 3);
+        return tag.get(0) == 'T' && tag.get(1) == 'A' && tag.get(2) == 'G';
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) break;
+        }
+        BYTES_READ.add(buffer.position());
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,120 @@
+package support;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the player, to find the operation behind a stutter in a long recording.<br>
+ * Every event is disabled by default, so recordings with the JDK's own settings don't include them. They are
+ * turned on by the settings in "jfr/mp3player.jfc", used together with the JDK's:
+ * <pre>java -XX:StartFlightRecording:settings=default,settings=src/main/resources/jfr/mp3player.jfc,filename=player.jfr Main</pre>
+ * While disabled, creating, beginning and committing an event is removed by the JIT, and the only cost left is
+ * the check of {@link #DECODE_BATCH} once per frame.
+ */
+public final class FlightEvents {
+
+    /**
+     * Number of frames in a {@link DecodeBatch}, about 1.7 seconds of audio.
+     */
+    static final int DECODE_BATCH_FRAMES = 64;
+
+    /**
+     * Type of {@link DecodeBatch}, checked before starting a batch since the event outlives a single frame.
+     */
+    static final EventType DECODE_BATCH = EventType.getEventType(DecodeBatch.class);
+
+    private FlightEvents() {
+    }
+
+    @Name("mp3player.DecodeBatch")
+    @Label("Frame Batch Decoded")
+    @Description("Frames of a song read and decoded in a row by the engine thread, including the time blocked on a full ring")
+    @Category({"MP3 Player", "Playback"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class DecodeBatch extends Event {
+        @Label("Song UUID")
+        String songUuid;
+        @Label("First Frame")
+        int firstFrame;
+        @Label("Frames")
+        int frames;
+    }
+
+    @Name("mp3player.Seek")
+    @Label("Seek")
+    @Description("Repositioning of the bitstream of the song playing")
+    @Category({"MP3 Player", "Playback"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class Seek extends Event {
+        @Label("Song UUID")
+        String songUuid;
+        @Label("Start Frame")
+        int startFrame;
+        @Label("Target Frame")
+        int targetFrame;
+    }
+
+    @Name("mp3player.SongOpen")
+    @Label("Song Opened")
+    @Description("Opening of the bitstream and decoder of a song")
+    @Category({"MP3 Player", "Playback"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class SongOpen extends Event {
+        @Label("Song UUID")
+        String songUuid;
+        @Label("Gapless")
+        @Description("The previous song ended by itself")
+        boolean gapless;
+        @Label("Prefetched")
+        @Description("The song was opened ahead of time by the prefetch task")
+        boolean prefetched;
+        @Label("Opened")
+        boolean opened;
+    }
+
+    @Name("mp3player.SongClose")
+    @Label("Song Closed")
+    @Description("Closing of the bitstream of a song")
+    @Category({"MP3 Player", "Playback"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class SongClose extends Event {
+        @Label("Song UUID")
+        String songUuid;
+    }
+
+    @Name("mp3player.ShuffleToggle")
+    @Label("Shuffle Toggled")
+    @Category({"MP3 Player", "Queue"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class ShuffleToggle extends Event {
+        @Label("Shuffled")
+        @Description("The queue is shuffled after the toggle")
+        boolean shuffled;
+        @Label("Queue Size")
+        int queueSize;
+    }
+
+    @Name("mp3player.QueueTableUpdate")
+    @Label("Queue Table Updated")
+    @Description("Change of the queue reported to the table, including the time the table takes to process it")
+    @Category({"MP3 Player", "Queue"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class QueueTableUpdate extends Event {
+        @Label("Change")
+        String change;
+        @Label("Rows")
+        int rows;
+    }
+}
@@ -0,0 +1,119 @@
+package support;
+
+/**
+ * Decodes the fields of a 32-bit MPEG audio frame header.
+ */
+final class FrameHeader {
+    static final int SIZE = 4;
+
+    // Bitrates in kbps, [0] for MPEG-1 and [1] for MPEG-2/2.5
+    private static final int[][] BITRATES_LAYER_1 = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256}};
+    private static final int[][] BITRATES_LAYER_2 = {
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}};
+    private static final int[][] BITRATES_LAYER_3 = {
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}};
+    // Indexed by the version field of the header: 0 = MPEG-2.5, 2 = MPEG-2, 3 = MPEG-1
+    private static final int[][] SAMPLE_RATES = {
+            {11025, 12000, 8000}, null, {22050, 24000, 16000}, {44100, 48000, 32000}};
+
+    private FrameHeader() {
+    }
+
+    /**
+     * @return True if the header has a frame sync and no reserved or free-format values.
+     */
+    static boolean isValid(int header) {
+        if ((header & 0xFFE00000) != 0xFFE00000) return false;
+        int bitrateIndex = bitrateIndex(header);
+        return version(header) != 1 && layer(header) != 0 && bitrateIndex != 0 && bitrateIndex != 15
+                && ((header >>> 10) & 0x3) != 3;
+    }
+
+    /**
+     * @return the size in bytes of the frame described by the header, or 0 if it is not a valid header.
+     */
+    static int frameSize(int header) {
+        if (!isValid(header)) return 0;
+        int padding = (header >>> 9) & 0x1;
+        int bitsPerSecond = bitrate(header) * 1000;
+        int sampleRate = sampleRate(header);
+        return switch (layer(header)) {
+            case 3 -> (12 * bitsPerSecond / sampleRate + padding) * 4;
+            case 2 -> 144 * bitsPerSecond / sampleRate + padding;
+            default -> (isMpeg1(header) ? 144 : 72) * bitsPerSecond / sampleRate + padding;
+        };
+    }
+
+    /**
+     * @return the bitrate of a valid header, in kbps.
+     */
+    static int bitrate(int header) {
+        int row = isMpeg1(header) ? 0 : 1;
+        return switch (layer(header)) {
+            case 3 -> BITRATES_LAYER_1[row][bitrateIndex(header)];
+            case 2 -> BITRATES_LAYER_2[row][bitrateIndex(header)];
+            default -> BITRATES_LAYER_3[row][bitrateIndex(header)];
+        };
+    }
+
+    /**
+     * @return the sample rate of a valid header, in Hz.
+     */
+    static int sampleRate(int header) {
+        return SAMPLE_RATES[version(header)][(header >>> 10) & 0x3];
+    }
+
+    /**
+     * @return the number of samples per channel in a frame of a valid header.
+     */
+    static int samplesPerFrame(int header) {
+        return switch (layer(header)) {
+            case 3 -> 384;
+            case 2 -> 1152;
+            default -> isMpeg1(header) ? 1152 : 576;
+        };
+    }
+
+    /**
+     * @return the size in bytes of the Layer III side information that follows the header (and CRC).
+     */
+    static int sideInfoSize(int header) {
+        boolean mono = ((header >>> 6) & 0x3) == 3;
+        if (isMpeg1(header)) return mono ? 17 : 32;
+        return mono ? 9 : 17;
+    }
+
+    /**
+     * @return True if the header is followed by a 16-bit CRC.
+     */
+    static boolean hasCrc(int header) {
+        return ((header >>> 16) & 0x1) == 0;
+    }
+
+    /**
+     * @return True if it is a Layer III header.
+     */
+    static boolean isLayer3(int header) {
+        return layer(header) == 1;
+    }
+
+    private static boolean isMpeg1(int header) {
+        return version(header) == 3;
+    }
+
+    private static int version(int header) {
+        return (header >>> 19) & 0x3;
+    }
+
+    private static int layer(int header) {
+        return (header >>> 17) & 0x3;
+    }
+
+    private static int bitrateIndex(int header) {
+        return (header >>> 12) & 0xF;
+    }
+}
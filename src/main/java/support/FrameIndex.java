@@ -0,0 +1,117 @@
+package support;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Table with the byte offset of every MPEG audio frame of a file, so playback can be positioned at any frame
+ * without reading the frames before it.<br>
+ * The offsets are stored in a single int[] (4 bytes per frame, about 1 MB for a 2-hour mix). The table is
+ * built by reading only the 4-byte header of each frame and skipping its body.
+ */
+public final class FrameIndex {
+    /**
+     * Largest value of main_data_begin in a Layer III frame, as in how far back the bit reservoir can reach.
+     */
+    private static final int MAX_RESERVOIR_BYTES = 511;
+    private final int[] offsets;
+
+    private FrameIndex(int[] offsets) {
+        this.offsets = offsets;
+    }
+
+    /**
+     * Scans the file and builds the offset table of its frames. A leading ID3v2 tag is skipped, and bytes that
+     * are not part of a frame (e.g. a trailing ID3v1 tag) are ignored.
+     *
+     * @param filePath Path of the MP3 file.
+     * @return a new {@link FrameIndex} of the file.
+     * @throws IOException if the file can't be read.
+     */
+    public static FrameIndex build(String filePath) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filePath), 64 * 1024)) {
+            int[] offsets = new int[1024];
+            int count = 0;
+            int position = skipId3v2(in);
+            int header = 0;
+            int headerBytes = 0;
+
+            int b;
+            while ((b = in.read()) != -1) {
+                header = (header << 8) | b;
+                position++;
+                if (++headerBytes < FrameHeader.SIZE) continue;
+
+                int size = FrameHeader.frameSize(header);
+                if (size <= 0) {
+                    // Not a valid header, slide one byte and try to sync again.
+                    headerBytes = FrameHeader.SIZE - 1;
+                    continue;
+                }
+                try {
+                    in.skipNBytes(size - FrameHeader.SIZE);
+                } catch (EOFException e) {
+                    break;      // Truncated last frame.
+                }
+
+                if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+                offsets[count++] = position - FrameHeader.SIZE;
+                position += size - FrameHeader.SIZE;
+                headerBytes = 0;
+            }
+            return new FrameIndex(Arrays.copyOf(offsets, count));
+        }
+    }
+
+    /**
+     * @return the number of frames in the file.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @param frame Index of the frame.
+     * @return the byte offset in the file where the specified frame starts.
+     */
+    public int offsetOf(int frame) {
+        return offsets[frame];
+    }
+
+    /**
+     * Returns the first frame that has to be decoded (and discarded) so the Layer III bit reservoir is filled
+     * when the specified frame is decoded. This is at most a few frames before the target, depending on the
+     * bitrate, so seeking costs the same regardless of the position in the file.
+     *
+     * @param frame Index of the target frame.
+     * @return the index of the first frame to be decoded.
+     */
+    public int warmUpStart(int frame) {
+        int start = frame;
+        while (start > 0 && offsets[frame] - offsets[start] <= MAX_RESERVOIR_BYTES) start--;
+        return start;
+    }
+
+    /**
+     * Skips an ID3v2 tag at the beginning of the stream, if there is one.
+     *
+     * @return the number of bytes skipped.
+     */
+    private static int skipId3v2(InputStream in) throws IOException {
+        in.mark(10);
+        byte[] tag = new byte[10];
+        int read = in.readNBytes(tag, 0, 10);
+        if (read < 10 || tag[0] != 'I' || tag[1] != 'D' || tag[2] != '3') {
+            in.reset();
+            return 0;
+        }
+        int size = ((tag[6] & 0x7F) << 21) | ((tag[7] & 0x7F) << 14) | ((tag[8] & 0x7F) << 7) | (tag[9] & 0x7F);
+        if ((tag[5] & 0x10) != 0) size += 10; // footer
+        in.skipNBytes(size);
+        return 10 + size;
+    }
+}
@@ -0,0 +1,54 @@
+package support;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, average and maximum of a latency. Recording only adds to striped counters, so any thread can
+ * record without waiting for the others.
+ */
+public final class LatencyStats {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param nanos Latency to record, in nanoseconds.
+     */
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * @return the number of recorded latencies.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the average recorded latency, in nanoseconds.
+     */
+    public long getAverageNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : totalNanos.sum() / n;
+    }
+
+    /**
+     * @return the longest recorded latency, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Sets every counter back to 0.
+     */
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+}
@@ -0,0 +1,140 @@
+package support;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Imports MP3 files and folders (recursively) in the background. Each file is parsed with {@link SongParser}
+ * by a virtual-thread task of a {@link TaskRuntime.Scope}, at most one per core at a time, and the parsed
+ * songs are delivered on the Event Dispatch Thread in batches, in the order they finish.<br>
+ * Progress (0 to 100) is reported through the "progress" property of {@link SwingWorker}, and the import can
+ * be stopped with {@link #cancel(boolean)}, which also cancels the parsing tasks. Songs delivered before the
+ * cancellation are kept, and files that fail to parse are reported to the {@link TaskRuntime}.
+ *
+ * @see SongParser
+ * @see SwingWorker
+ */
+public class LibraryImport extends SwingWorker<Integer, Song> {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final File[] selection;
+    private final TaskRuntime.Scope scope;
+    private final Consumer<List<Song>> onBatch;
+    private final Runnable onFinished;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile int filesParsed;
+
+    /**
+     * @param selection  Files and folders chosen by the user.
+     * @param scope      Scope where the files are parsed and parse errors are reported. It is cancelled when
+     *                   the import ends.
+     * @param onBatch    Receives each batch of parsed songs, on the Event Dispatch Thread.
+     * @param onFinished Called on the Event Dispatch Thread when the import finishes or is cancelled.
+     */
+    public LibraryImport(File[] selection, TaskRuntime.Scope scope, Consumer<List<Song>> onBatch, Runnable onFinished) {
+        this.selection = selection;
+        this.scope = scope;
+        this.onBatch = onBatch;
+        this.onFinished = onFinished;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        startNanos = System.nanoTime();
+        List<File> files = listMp3Files(selection);
+
+        // virtual threads are cheap, but each parse holds a file open, so only THREADS of them run at once
+        Semaphore parsing = new Semaphore(THREADS);
+        try {
+            CompletionService<Song> completion = new ExecutorCompletionService<>(scope);
+            for (File file : files) {
+                completion.submit(() -> {
+                    parsing.acquire();
+                    try {
+                        return SongParser.parse(file);
+                    } finally {
+                        parsing.release();
+                    }
+                });
+            }
+
+            for (int done = 1; done <= files.size() && !isCancelled(); done++) {
+                try {
+                    Song song = completion.take().get();
+                    if (song != null) publish(song);
+                } catch (ExecutionException e) {
+                    scope.reportError("parse", e.getCause());
+                }
+                filesParsed = done;
+                setProgress(done * 100 / files.size());
+            }
+        } finally {
+            scope.cancel();
+            endNanos = System.nanoTime();
+        }
+        return filesParsed;
+    }
+
+    @Override
+    protected void process(List<Song> songs) {
+        if (!isCancelled()) onBatch.accept(songs);
+    }
+
+    @Override
+    protected void done() {
+        onFinished.run();
+    }
+
+    /**
+     * @return the number of files parsed per second, up to now or until the import finished.
+     */
+    public double getFilesPerSecond() {
+        long start = startNanos;
+        if (start == 0) return 0;
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return end == start ? 0 : filesParsed * 1_000_000_000.0 / (end - start);
+    }
+
+    /**
+     * @return the maximum number of files parsed at the same time.
+     */
+    public static int getThreads() {
+        return THREADS;
+    }
+
+    /**
+     * @param selection Files and folders.
+     * @return the files, followed by the MP3 files inside the folders (recursively) sorted by path.
+     */
+    public static List<File> listMp3Files(File[] selection) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (File chosen : selection) {
+            if (chosen.isDirectory()) {
+                try (Stream<Path> walk = Files.walk(chosen.toPath())) {
+                    walk.filter(Files::isRegularFile)
+                            .filter(path -> path.getFileName().toString().toLowerCase().endsWith(".mp3"))
+                            .sorted()
+                            .forEach(path -> files.add(path.toFile()));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } else {
+                files.add(chosen);
+            }
+        }
+        return files;
+    }
+}
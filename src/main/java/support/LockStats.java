@@ -0,0 +1,109 @@
+package support;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wait and hold times of a lock: how long threads waited to acquire it and how long they held it.
+ * Recording only adds to striped counters, so it doesn't serialize the threads using the lock. The wait times
+ * of the last minute are also kept in a {@link LatencyHistogram}, for their percentiles.
+ *
+ * @see TimedLock
+ */
+public final class LockStats {
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+    private final LongAccumulator maxHoldNanos = new LongAccumulator(Long::max, 0);
+    private final LatencyHistogram waitHistogram = new LatencyHistogram();
+
+    /**
+     * Records that the lock was acquired.
+     *
+     * @param waitNanos How long the thread waited for the lock.
+     * @param contended True if the lock was held by another thread when it was requested.
+     */
+    public void recordAcquisition(long waitNanos, boolean contended) {
+        acquisitions.increment();
+        if (contended) this.contended.increment();
+        this.waitNanos.add(waitNanos);
+        maxWaitNanos.accumulate(waitNanos);
+        waitHistogram.record(waitNanos);
+    }
+
+    /**
+     * Records that the lock was released.
+     *
+     * @param holdNanos How long the lock was held.
+     */
+    public void recordRelease(long holdNanos) {
+        this.holdNanos.add(holdNanos);
+        maxHoldNanos.accumulate(holdNanos);
+    }
+
+    /**
+     * @return the number of times the lock was acquired.
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * @return the number of times the lock was held by another thread when it was requested.
+     */
+    public long getContendedAcquisitions() {
+        return contended.sum();
+    }
+
+    /**
+     * @return the average time waited to acquire the lock, in nanoseconds.
+     */
+    public long getAverageWaitNanos() {
+        long count = getAcquisitions();
+        return count == 0 ? 0 : waitNanos.sum() / count;
+    }
+
+    /**
+     * @return the longest time waited to acquire the lock, in nanoseconds.
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * @return the average time the lock was held, in nanoseconds.
+     */
+    public long getAverageHoldNanos() {
+        long count = getAcquisitions();
+        return count == 0 ? 0 : holdNanos.sum() / count;
+    }
+
+    /**
+     * @return the longest time the lock was held, in nanoseconds.
+     */
+    public long getMaxHoldNanos() {
+        return maxHoldNanos.get();
+    }
+
+    /**
+     * @return the times waited to acquire the lock during the last minute.
+     */
+    public LatencyHistogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    /**
+     * Sets every counter back to 0.
+     */
+    public void reset() {
+        acquisitions.reset();
+        contended.reset();
+        waitNanos.reset();
+        holdNanos.reset();
+        maxWaitNanos.reset();
+        maxHoldNanos.reset();
+        waitHistogram.reset();
+    }
+}
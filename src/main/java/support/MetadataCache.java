@@ -0,0 +1,327 @@
+package support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * On-disk cache of the information parsed from MP3 files, keyed by path, size and modification time, so files
+ * that were imported before don't need to be read again.<br>
+ * The cache is a single append-only file of binary records. When the cache is opened, the file is memory-mapped
+ * and scanned once to build a path-to-offset index; a lookup then decodes only the matching record from the
+ * mapped buffer. Records stored while the player runs are appended to the file and kept in memory. A later
+ * record for the same path replaces the earlier one.<br>
+ * Records are stored by the threads that parse the files, which are interrupted when an import is cancelled. An
+ * interrupt during a write closes the channel, so the record is written again on a reopened channel.<br>
+ * The file is "~/.mp3-player/metadata.cache" by default and can be set with the "player.metadataCache" system
+ * property ("off" disables the cache).<br>
+ * I/O errors of the cache are counted and handed to the {@link TaskRuntime.ErrorHandler} set with
+ * {@link #setErrorHandler(TaskRuntime.ErrorHandler)}, so a cache that couldn't be opened doesn't go unnoticed.
+ *
+ * @see SongParser
+ */
+public final class MetadataCache {
+    private static final int MAGIC = 0x4D503343;    // "MP3C"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // size, mtime, msLength, numFrames, msPerFrame
+    private static final int FIXED_SIZE = 8 + 8 + 4 + 4 + 4;
+
+    private static volatile MetadataCache shared;
+    private static volatile TaskRuntime.ErrorHandler errorHandler;
+
+    private final Path file;
+    private FileChannel channel;        // guarded by this
+    private long end;                   // offset after the last record, guarded by this
+    private final MappedByteBuffer mapped;
+    private final Map<String, Integer> mappedIndex;
+    private final Map<String, byte[]> appended = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private MetadataCache(Path file, FileChannel channel, long end, MappedByteBuffer mapped,
+                          Map<String, Integer> mappedIndex) {
+        this.file = file;
+        this.channel = channel;
+        this.end = end;
+        this.mapped = mapped;
+        this.mappedIndex = mappedIndex;
+    }
+
+    /**
+     * Returns the cache shared by the whole player, opening it on the first call. If the cache file can't be
+     * opened, returns a cache that misses every lookup and doesn't store anything.
+     *
+     * @return the shared {@link MetadataCache}.
+     */
+    public static MetadataCache shared() {
+        MetadataCache cache = shared;
+        if (cache == null) {
+            synchronized (MetadataCache.class) {
+                cache = shared;
+                if (cache == null) {
+                    String property = System.getProperty("player.metadataCache",
+                            Path.of(System.getProperty("user.home"), ".mp3-player", "metadata.cache").toString());
+                    cache = "off".equalsIgnoreCase(property) ? disabled() : open(Path.of(property));
+                    shared = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Sets where I/O errors of the caches are reported, e.g. {@link TaskRuntime#reportError(String, Throwable)}.
+     * Until one is set, they are printed to the standard error stream.
+     *
+     * @param handler Receives the errors, with "metadata-cache/open" or "metadata-cache/store" as the source.
+     */
+    public static void setErrorHandler(TaskRuntime.ErrorHandler handler) {
+        errorHandler = handler;
+    }
+
+    /**
+     * Opens (or creates) a cache file. If the file can't be opened or has another format, returns a cache that
+     * misses every lookup and doesn't store anything.
+     *
+     * @param file Path of the cache file.
+     * @return the opened {@link MetadataCache}.
+     */
+    public static MetadataCache open(Path file) {
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < HEADER_SIZE) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip(), 0);
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                channel.close();
+                return disabled();
+            }
+
+            Map<String, Integer> index = new HashMap<>();
+            // New records are appended after the last complete one, overwriting a record left incomplete by a crash.
+            int end = scan(mapped, index);
+            return new MetadataCache(file, channel, end, mapped, index);
+        } catch (IOException e) {
+            MetadataCache cache = disabled();
+            cache.reportError("open", e);
+            return cache;
+        }
+    }
+
+    private static MetadataCache disabled() {
+        return new MetadataCache(null, null, 0, null, Map.of());
+    }
+
+    /**
+     * Returns a {@link Song} (with a new {@link UUID}) with the cached information of the file, if the cache has
+     * an entry for its path with the same size and modification time.
+     *
+     * @param file MP3 file.
+     * @return the cached {@link Song}, or null if there is no valid entry.
+     */
+    public Song lookup(File file) {
+        String path = file.getAbsolutePath();
+        ByteBuffer record = null;
+        byte[] recent = appended.get(path);
+        if (recent != null) {
+            record = ByteBuffer.wrap(recent);
+        } else {
+            Integer offset = mappedIndex.get(path);
+            if (offset != null) record = mapped.slice(offset + 4, mapped.getInt(offset));
+        }
+
+        Song song = null;
+        if (record != null) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                if (record.getLong(0) == attributes.size()
+                        && record.getLong(8) == attributes.lastModifiedTime().toMillis()) {
+                    song = decode(record, file.getPath());
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        if (song == null) misses.increment();
+        else hits.increment();
+        return song;
+    }
+
+    /**
+     * Stores the information of a parsed song, keyed by its path and the current size and modification time
+     * of its file.
+     *
+     * @param song Song parsed from its file.
+     */
+    public void store(Song song) {
+        if (channel == null) return;
+        File file = new File(song.getFilePath());
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            String path = file.getAbsolutePath();
+            byte[] record = encode(song, path, attributes.size(), attributes.lastModifiedTime().toMillis());
+
+            ByteBuffer framed = ByteBuffer.allocate(4 + record.length).putInt(record.length).put(record).flip();
+            synchronized (this) {
+                try {
+                    write(framed);
+                } catch (ClosedByInterruptException ex) {
+                    // the channel is closed for every thread, not just this one; the interrupt is kept for the caller
+                    Thread.interrupted();
+                    try {
+                        channel = FileChannel.open(this.file, StandardOpenOption.WRITE);
+                        write(framed.rewind());
+                    } finally {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                end += framed.limit();
+            }
+            appended.put(path, record);
+        } catch (IOException e) {
+            reportError("store", e);
+        }
+    }
+
+    private void reportError(String operation, IOException error) {
+        errors.increment();
+        TaskRuntime.ErrorHandler handler = errorHandler;
+        if (handler != null) {
+            handler.report("metadata-cache/" + operation, error);
+        } else {
+            System.err.println("Error in metadata-cache/" + operation + ":");
+            error.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a framed record after the last one. A record left incomplete by a failed write is overwritten.
+     */
+    private void write(ByteBuffer framed) throws IOException {
+        while (framed.hasRemaining()) channel.write(framed, end + framed.position());
+    }
+
+    /**
+     * @return the number of lookups that found a valid entry.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a valid entry.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of I/O errors of the cache, including failing to open its file.
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that found a valid entry, from 0 to 1.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of entries in the cache.
+     */
+    public int size() {
+        int size = appended.size();
+        for (String path : mappedIndex.keySet()) if (!appended.containsKey(path)) size++;
+        return size;
+    }
+
+    /**
+     * Reads every complete record of the mapped file into the index.
+     *
+     * @return the offset after the last complete record.
+     */
+    private static int scan(ByteBuffer buffer, Map<String, Integer> index) {
+        int position = HEADER_SIZE;
+        while (position + 4 <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length < FIXED_SIZE + 2 || position + 4 + length > buffer.limit()) break;
+
+            ByteBuffer record = buffer.slice(position + 4, length);
+            index.put(readString(record, FIXED_SIZE), position);
+            position += 4 + length;
+        }
+        return position;
+    }
+
+    private static byte[] encode(Song song, String path, long size, long lastModified) {
+        byte[][] strings = {
+                path.getBytes(StandardCharsets.UTF_8),
+                song.getTitle().getBytes(StandardCharsets.UTF_8),
+                song.getAlbum().getBytes(StandardCharsets.UTF_8),
+                song.getArtist().getBytes(StandardCharsets.UTF_8),
+                song.getYear().getBytes(StandardCharsets.UTF_8)};
+        int length = FIXED_SIZE;
+        for (byte[] string : strings) length += 2 + Math.min(string.length, 0xFFFF);
+
+        ByteBuffer record = ByteBuffer.allocate(length)
+                .putLong(size)
+                .putLong(lastModified)
+                .putFloat(song.getMsLength())
+                .putInt(song.getNumFrames())
+                .putFloat(song.getMsPerFrame());
+        for (byte[] string : strings) {
+            int stringLength = Math.min(string.length, 0xFFFF);
+            record.putShort((short) stringLength).put(string, 0, stringLength);
+        }
+        return record.array();
+    }
+
+    private static Song decode(ByteBuffer record, String filePath) {
+        long size = record.getLong(0);
+        float msLength = record.getFloat(16);
+        int numFrames = record.getInt(20);
+        float msPerFrame = record.getFloat(24);
+
+        String[] strings = new String[5];
+        int position = FIXED_SIZE;
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(record, position);
+            position += 2 + (record.getShort(position) & 0xFFFF);
+        }
+
+        return new Song(UUID.randomUUID().toString(), strings[1], strings[2], strings[3], strings[4],
+                SongParser.formatLength(msLength), msLength, filePath, (int) size, numFrames, msPerFrame);
+    }
+
+    private static String readString(ByteBuffer record, int position) {
+        int length = record.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        record.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
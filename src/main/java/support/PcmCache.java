@@ -0,0 +1,306 @@
+package support;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decoded PCM of recently played songs, so replaying a song, going back to the previous one or seeking back
+ * into a region that was just played doesn't decode it again.<br>
+ * Audio is kept in segments of {@value #SEGMENT_FRAMES} consecutive frames of a song, in direct buffers off the
+ * Java heap, up to a byte budget set with the "player.pcmCacheMB" system property. The cache is off when the
+ * budget is 0, the default. When the budget is used up, the least recently used segment is evicted and its
+ * buffer reused, so a full cache doesn't allocate.<br>
+ * Segments are stored and read only by the engine thread. The statistics can be read from any thread.
+ */
+public final class PcmCache {
+
+    /**
+     * Number of frames in a segment, about 0.8 seconds of audio.
+     */
+    static final int SEGMENT_FRAMES = 32;
+    /**
+     * Most samples in a frame: 1152 per channel, in stereo.
+     */
+    private static final int MAX_FRAME_SAMPLES = 2 * 1152;
+    private static final int SEGMENT_BYTES = SEGMENT_FRAMES * MAX_FRAME_SAMPLES * Short.BYTES;
+
+    /**
+     * Decoded frames of a song, from frame index * {@value #SEGMENT_FRAMES} on. All frames have the same length.
+     */
+    static final class Segment {
+        private final ShortBuffer samples = ByteBuffer.allocateDirect(SEGMENT_BYTES).order(ByteOrder.nativeOrder()).asShortBuffer();
+        private String uuid;
+        private int index;
+        private int frames;
+        private int frameLength;
+        private int frequency;
+        private int channels;
+        private boolean cached;
+        // least recently used list
+        private Segment previous;
+        private Segment next;
+
+        /**
+         * @return true if the segment is in the cache and holds the specified frame of the song.
+         */
+        boolean contains(String uuid, int frame) {
+            return cached && index == frame / SEGMENT_FRAMES && frame % SEGMENT_FRAMES < frames && uuid.equals(this.uuid);
+        }
+
+        int frequency() {
+            return frequency;
+        }
+
+        int channels() {
+            return channels;
+        }
+
+        /**
+         * Copies the samples of a frame the segment {@link #contains(String, int)}.
+         *
+         * @return the number of samples copied.
+         */
+        int copyFrame(int frame, short[] destination) {
+            samples.get(frame % SEGMENT_FRAMES * frameLength, destination, 0, frameLength);
+            return frameLength;
+        }
+    }
+
+    private final int maxSegments;
+    private final Map<String, Segment[]> songs = new HashMap<>();
+    private Segment mostRecent;
+    private Segment leastRecent;
+    private Segment filling;            // being filled by the decoded frames, not in the cache yet
+    private int allocated;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile long bytesHeld;
+    private volatile int songsHeld;
+
+    /**
+     * Constructs a cache with the budget set by the "player.pcmCacheMB" system property.
+     */
+    public PcmCache() {
+        this(Long.getLong("player.pcmCacheMB", 0) * 1024 * 1024);
+    }
+
+    /**
+     * @param budgetBytes Most bytes of direct memory the cache may hold. Less than one segment turns it off.
+     */
+    public PcmCache(long budgetBytes) {
+        maxSegments = (int) Math.min(Integer.MAX_VALUE, budgetBytes / SEGMENT_BYTES);
+    }
+
+    /**
+     * @return false if the budget is too small for a single segment.
+     */
+    public boolean isEnabled() {
+        return maxSegments > 0;
+    }
+
+    /**
+     * Finds the segment holding a frame and marks it as the most recently used.
+     *
+     * @return the segment, or null if the frame is not cached.
+     */
+    Segment find(String uuid, int frame) {
+        Segment[] segments = songs.get(uuid);
+        int index = frame / SEGMENT_FRAMES;
+        if (segments == null || index >= segments.length) return null;
+        Segment segment = segments[index];
+        if (segment == null || frame % SEGMENT_FRAMES >= segment.frames) return null;
+        unlink(segment);
+        linkFirst(segment);
+        return segment;
+    }
+
+    /**
+     * Counts a frame played from the cache.
+     */
+    void recordHit() {
+        hits.increment();
+    }
+
+    /**
+     * Adds a decoded frame to the segment being filled, which is cached once it is complete. Frames must be
+     * stored in order; a frame that doesn't follow the previous one, or has another format, drops the partial
+     * segment, and filling starts again at the next segment boundary.
+     *
+     * @param uuid      UUID of the song.
+     * @param frame     Index of the frame in the song.
+     * @param samples   Decoded samples.
+     * @param length    Number of samples.
+     * @param frequency Sample rate of the frame.
+     * @param channels  Number of channels of the frame.
+     */
+    void store(String uuid, int frame, short[] samples, int length, int frequency, int channels) {
+        if (!isEnabled()) return;
+        misses.increment();
+        if (length > MAX_FRAME_SAMPLES) return;
+
+        int offset = frame % SEGMENT_FRAMES;
+        Segment segment = filling;
+        if (offset == 0) {
+            if (find(uuid, frame) != null) return;
+            if (segment == null) segment = filling = take();
+            segment.uuid = uuid;
+            segment.index = frame / SEGMENT_FRAMES;
+            segment.frames = 0;
+            segment.frameLength = length;
+            segment.frequency = frequency;
+            segment.channels = channels;
+        } else if (segment == null || segment.frames != offset || segment.index != frame / SEGMENT_FRAMES
+                || segment.frameLength != length || segment.frequency != frequency || segment.channels != channels
+                || !uuid.equals(segment.uuid)) {
+            if (segment != null) segment.frames = -1;
+            return;
+        }
+
+        segment.samples.put(offset * length, samples, 0, length);
+        if (++segment.frames == SEGMENT_FRAMES) {
+            add(segment);
+            filling = null;
+        }
+    }
+
+    /**
+     * Caches the last, partial segment of a song that was decoded to its end.
+     */
+    void endOfSong() {
+        Segment segment = filling;
+        if (segment != null && segment.frames > 0) {
+            add(segment);
+            filling = null;
+        }
+    }
+
+    //<editor-fold desc="Statistics">
+    /**
+     * @return the number of frames played from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of frames decoded while the cache was on.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of the frames played from the cache, from 0 to 1.
+     */
+    public double getHitRate() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return the number of segments evicted to make room for newer ones.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the bytes of direct memory held by the segments.
+     */
+    public long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    /**
+     * @return the most bytes of direct memory the cache may hold.
+     */
+    public long getBudgetBytes() {
+        return (long) maxSegments * SEGMENT_BYTES;
+    }
+
+    /**
+     * @return the number of songs with audio in the cache.
+     */
+    public int getSongsHeld() {
+        return songsHeld;
+    }
+
+    /**
+     * Sets the hit, miss and eviction counters back to 0. Cached audio is kept.
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+    //</editor-fold>
+
+    /**
+     * @return a segment to be filled: a new one while under the budget, otherwise the least recently used.
+     */
+    private Segment take() {
+        if (allocated < maxSegments) {
+            allocated++;
+            bytesHeld = (long) allocated * SEGMENT_BYTES;
+            return new Segment();
+        }
+
+        Segment segment = leastRecent;
+        unlink(segment);
+        Segment[] segments = songs.get(segment.uuid);
+        segments[segment.index] = null;
+        // a song with nothing left in the cache is forgotten, so the map doesn't grow with every song played
+        if (isEmpty(segments)) {
+            songs.remove(segment.uuid);
+            songsHeld = songs.size();
+        }
+        segment.cached = false;
+        evictions.increment();
+        return segment;
+    }
+
+    private static boolean isEmpty(Segment[] segments) {
+        for (Segment segment : segments) {
+            if (segment != null) return false;
+        }
+        return true;
+    }
+
+    private void add(Segment segment) {
+        Segment[] segments = songs.get(segment.uuid);
+        if (segments == null || segment.index >= segments.length) {
+            int length = Math.max(segment.index + 1, segments == null ? 64 : segments.length * 2);
+            segments = segments == null ? new Segment[length] : Arrays.copyOf(segments, length);
+            songs.put(segment.uuid, segments);
+            songsHeld = songs.size();
+        }
+        segments[segment.index] = segment;
+        segment.cached = true;
+        linkFirst(segment);
+    }
+
+    private void linkFirst(Segment segment) {
+        segment.previous = null;
+        segment.next = mostRecent;
+        if (mostRecent != null) mostRecent.previous = segment;
+        mostRecent = segment;
+        if (leastRecent == null) leastRecent = segment;
+    }
+
+    private void unlink(Segment segment) {
+        if (segment.previous != null) segment.previous.next = segment.next;
+        else mostRecent = segment.next;
+        if (segment.next != null) segment.next.previous = segment.previous;
+        else leastRecent = segment.previous;
+        segment.previous = null;
+        segment.next = null;
+    }
+}
@@ -0,0 +1,191 @@
+package support;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.Obuffer;
+
+/**
+ * Bounded ring of decoded PCM frames shared by a decode stage (producer) and an output stage (consumer).
+ * Each slot is allocated once with room for {@link Obuffer#OBUFFERSIZE} samples, so steady-state playback
+ * only copies samples in and out of the ring.<br>
+ * The stages wait for each other on the intrinsic monitor of the ring rather than on a {@link
+ * java.util.concurrent.locks.Condition}, which allocates a node every time a thread waits. With the output
+ * pacing playback, the decode stage waits once per frame, so putting and taking frames allocates nothing.
+ * There is a single thread on each side, so waking both with notifyAll costs at most one extra wakeup.<br>
+ * The ring also keeps the output position, as in the index of the frame after the last one that was fully
+ * handed to the consumer. Calling {@link #clear(int)} (e.g. when seeking) discards every buffered frame and
+ * invalidates frames decoded before the call, so stale audio is never played after a seek.
+ *
+ * @see Obuffer
+ */
+public class PcmRingBuffer {
+
+    /**
+     * Receives a decoded frame from the ring. Called by the output stage without holding the ring lock,
+     * so a blocking write does not stall the decode stage.
+     */
+    @FunctionalInterface
+    public interface FrameConsumer {
+        void accept(short[] samples, int length, int frame) throws JavaLayerException;
+    }
+
+    private final Object lock = new Object();
+
+    private final short[][] samples;
+    private final int[] lengths;
+    private final int[] frames;
+    private final int capacity;
+
+    private int head;
+    private int tail;
+    private int count;
+    private int readingSlot = -1;
+    private boolean paused;
+    private long generation;
+    private volatile int position;
+
+    /**
+     * Constructs a newly allocated {@link PcmRingBuffer}.
+     *
+     * @param capacity Number of decoded frames the ring can hold.
+     */
+    public PcmRingBuffer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        this.capacity = capacity;
+        this.samples = new short[capacity][Obuffer.OBUFFERSIZE];
+        this.lengths = new int[capacity];
+        this.frames = new int[capacity];
+    }
+
+    /**
+     * Returns the current generation. Should be read by the decode stage before decoding a frame and passed
+     * back to {@link #put(short[], int, int, long)}, so frames decoded before a {@link #clear(int)} are dropped.
+     *
+     * @return the current generation of the ring.
+     */
+    public long generation() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * Copies a decoded frame into the ring, blocking while the ring is full.
+     *
+     * @param source     Decoded samples.
+     * @param length     Number of samples to copy.
+     * @param frame      Index of the frame in the song.
+     * @param generation Generation read before the frame was decoded.
+     * @return False if the frame was dropped because the ring was cleared in the meantime.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    public boolean put(short[] source, int length, int frame, long generation) throws InterruptedException {
+        synchronized (lock) {
+            while (this.generation == generation && (count == capacity || tail == readingSlot)) lock.wait();
+            if (this.generation != generation) return false;
+
+            System.arraycopy(source, 0, samples[tail], 0, length);
+            lengths[tail] = length;
+            frames[tail] = frame;
+            tail = (tail + 1) % capacity;
+            count++;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Hands the oldest frame to the consumer, blocking while the ring is empty or paused.
+     * The slot is only released after the consumer returns.
+     *
+     * @param consumer Output stage callback.
+     * @throws InterruptedException if interrupted while waiting for a frame.
+     * @throws JavaLayerException   if thrown by the consumer.
+     */
+    public void take(FrameConsumer consumer) throws InterruptedException, JavaLayerException {
+        int slot;
+        long takenGeneration;
+        synchronized (lock) {
+            while (count == 0 || paused) lock.wait();
+            slot = head;
+            readingSlot = slot;
+            takenGeneration = generation;
+        }
+
+        try {
+            consumer.accept(samples[slot], lengths[slot], frames[slot]);
+        } finally {
+            synchronized (lock) {
+                readingSlot = -1;
+                if (takenGeneration == generation) {
+                    position = frames[slot] + 1;
+                    head = (head + 1) % capacity;
+                    count--;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Discards every buffered frame and sets the output position.
+     * Frames being decoded when this is called will be dropped by {@link #put(short[], int, int, long)}.
+     *
+     * @param newPosition Index of the next frame that will be put in the ring.
+     */
+    public void clear(int newPosition) {
+        synchronized (lock) {
+            generation++;
+            count = 0;
+            head = tail = readingSlot >= 0 ? (readingSlot + 1) % capacity : 0;
+            position = newPosition;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until every buffered frame has been handed to the consumer and the consumer returned.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitEmpty() throws InterruptedException {
+        synchronized (lock) {
+            while (count > 0 || readingSlot >= 0) lock.wait();
+        }
+    }
+
+    /**
+     * Pauses or resumes the output stage. While paused, {@link #take(FrameConsumer)} blocks even if there are
+     * buffered frames, and the decode stage is held back once the ring is full.
+     *
+     * @param paused True to pause and false to resume.
+     */
+    public void setPaused(boolean paused) {
+        synchronized (lock) {
+            this.paused = paused;
+            if (!paused) lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the index of the frame after the last one handed to the consumer.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the number of decoded frames currently buffered.
+     */
+    public int size() {
+        synchronized (lock) {
+            return count;
+        }
+    }
+
+    /**
+     * @return the maximum number of decoded frames the ring can hold.
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,893 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+import javazoom.jl.player.AudioDevice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Plays the songs of a {@link Playlist}. A single engine thread owns the bitstream and the decoder: it applies
+ * the submitted {@link PlayerCommand}s in order and, while playing, decodes frames into a {@link PcmRingBuffer}
+ * that an output thread writes to the AudioDevice.<br>
+ * Commands are applied between two frames, so the time from submitting a command to its effect is bounded by
+ * the time the output stage takes to free one slot of the ring (about one frame) plus the decoding of one frame.
+ * While paused or with nothing to play, the engine thread blocks on the command queue and uses no CPU.<br>
+ * State changes are emitted as {@link PlayerEvent}s on the engine thread, so listeners must hand them off to
+ * their own thread.<br>
+ * The engine and output threads are audio threads of a {@link TaskRuntime}. The next song is opened ahead of
+ * time, and the {@link FrameIndex} of the songs is built for seeking, by tasks of its "prefetch" scope, which are
+ * cancelled when playback stops.
+ */
+public class PlaybackEngine {
+
+    /**
+     * Opens the bytes of a song from a byte offset. {@link Song#getInputStream(long)}, except in benchmarks.
+     */
+    interface SongSource {
+        InputStream open(Song song, long offset) throws IOException;
+    }
+
+    private record PreparedSong(Song song, Bitstream bitstream, Decoder decoder) {
+    }
+
+    /**
+     * How often the engine checks whether the output stage finished the last song of the queue.
+     */
+    private static final long ENDING_POLL_MILLIS = 10;
+    private static final long CLOSE_MILLIS = 1000;
+
+    private final Playlist playlist;
+    private final LinkedBlockingQueue<PlayerCommand> commands = new LinkedBlockingQueue<>();
+    private final List<Consumer<PlayerEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final LatencyStats commandLatency = new LatencyStats();
+    private final PlaybackTimings timings;
+    private final AudioSink sink;
+    private final SongSource source;
+    private final TaskRuntime tasks;
+    private final TaskRuntime.Scope prefetch;
+    private final Thread engineThread;
+    private final Thread outputThread;
+
+    /**
+     * The MPEG audio bitstream.
+     */
+    private volatile Bitstream bitstream;
+    /**
+     * The MPEG audio decoder.
+     */
+    private Decoder decoder;
+    /**
+     * The AudioDevice where audio samples are written to.
+     */
+    private volatile AudioDevice device;
+    private volatile int deviceFrequency;
+    private volatile int deviceChannels;
+    private volatile long playedMicros;     // written only by the output thread
+    /**
+     * Decoded frames waiting to be written to the AudioDevice.
+     * Its depth can be set with the "player.bufferFrames" system property.
+     */
+    private final PcmRingBuffer pcmBuffer = new PcmRingBuffer(Integer.getInteger("player.bufferFrames", 16));
+
+    private volatile Song songPlaying;
+    private volatile int playingState = 0;
+    // written only by the engine thread
+    private int currentFrame;
+    private boolean firstFrame;
+    private boolean gaplessStart;       // the previous song ended by itself and its last frames are still buffered
+    private boolean ending;             // the last song was fully decoded and the output is playing what is left
+    private FlightEvents.DecodeBatch decodeBatch;   // null unless recording with JFR
+
+    /**
+     * Decoded audio of recently played regions, replayed without decoding. Off unless "player.pcmCacheMB" is set.
+     */
+    private final PcmCache pcmCache = new PcmCache();
+    private PcmCache.Segment cachedSegment;         // segment the last frame was played from
+    private final short[] cachedFrame = new short[2 * 1152];
+    /**
+     * Frame the bitstream is positioned at while frames are played from the cache, or -1 if it is at the
+     * current frame. Decoding moves it to the current frame first.
+     */
+    private int bitstreamFrame = -1;
+
+    /**
+     * Bitstream and decoder of the next song in the queue, opened in the background before the current one ends.
+     */
+    private final AtomicReference<PreparedSong> preparedSong = new AtomicReference<>();
+    private long transitionStart;
+    private volatile long lastTransitionNanos;
+    private final LongAdder gaplessTransitions = new LongAdder();
+    private final LongAdder transitionGaps = new LongAdder();
+    private final LongAdder framesDecoded = new LongAdder();
+
+    // Output stage: writes the frames decoded by the engine thread to the AudioDevice
+    private final PcmRingBuffer.FrameConsumer writeToDevice = this::writeFrame;
+
+    /**
+     * Constructs a {@link PlaybackEngine} and starts its engine and output threads.
+     *
+     * @param playlist Queue to play from. Songs can be added, shuffled and looped from any thread, but
+     *                 songs must only be removed through {@link PlayerCommand.Type#REMOVE}.
+     * @param sink     Where the decoded audio is written.
+     * @param tasks    Runtime that runs the threads of the engine and receives its errors.
+     */
+    public PlaybackEngine(Playlist playlist, AudioSink sink, TaskRuntime tasks) {
+        this(playlist, sink, tasks, Song::getInputStream);
+    }
+
+    /**
+     * Constructs a {@link PlaybackEngine} that reads the songs from the specified source instead of their
+     * files, so a benchmark can play a stream that never ends.
+     */
+    PlaybackEngine(Playlist playlist, AudioSink sink, TaskRuntime tasks, SongSource source) {
+        this.playlist = playlist;
+        this.sink = sink;
+        this.source = source;
+        this.tasks = tasks;
+        this.prefetch = tasks.newScope("prefetch");
+        this.timings = new PlaybackTimings(playlist.getLockStats());
+
+        outputThread = tasks.startAudioThread("audio-output", () -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    pcmBuffer.take(writeToDevice);
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (JavaLayerException ex) {
+                    tasks.reportError("audio-output", ex);
+                }
+            }
+        });
+        engineThread = tasks.startAudioThread("playback-engine", this::run);
+    }
+
+    /**
+     * Queues a command to be applied by the engine thread.
+     *
+     * @param type     What the command does.
+     * @param argument Queue index for {@link PlayerCommand.Type#PLAY} and {@link PlayerCommand.Type#REMOVE},
+     *                 frame for {@link PlayerCommand.Type#SEEK}, ignored otherwise.
+     * @return a future completed once the command has been applied.
+     */
+    public CompletableFuture<Void> submit(PlayerCommand.Type type, int argument) {
+        PlayerCommand command = PlayerCommand.of(type, argument);
+        commands.add(command);
+        return command.applied();
+    }
+
+    /**
+     * Queues a command that takes no argument.
+     *
+     * @param type What the command does.
+     * @return a future completed once the command has been applied.
+     */
+    public CompletableFuture<Void> submit(PlayerCommand.Type type) {
+        return submit(type, -1);
+    }
+
+    /**
+     * Stops playback, cancels the prefetching of the next song and waits for the engine and output threads
+     * to end. Commands submitted afterwards are never applied.
+     */
+    public void close() {
+        try {
+            submit(PlayerCommand.Type.STOP).get(CLOSE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            tasks.reportError("playback-engine", ex);
+        }
+
+        prefetch.cancel();
+        engineThread.interrupt();
+        outputThread.interrupt();
+        try {
+            engineThread.join(CLOSE_MILLIS);
+            outputThread.join(CLOSE_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        closeDevice();
+    }
+
+    /**
+     * Registers a listener for the state changes of the engine. Listeners are called on the engine thread.
+     *
+     * @param listener Listener to be called for every {@link PlayerEvent}.
+     */
+    public void addListener(Consumer<PlayerEvent> listener) {
+        listeners.add(listener);
+    }
+
+    //<editor-fold desc="Getters">
+    /**
+     * @return the song being played or paused, or null if stopped.
+     */
+    public Song getSongPlaying() {
+        return songPlaying;
+    }
+
+    /**
+     * @return 1 if playing and 0 if paused or stopped.
+     */
+    public int getPlayingState() {
+        return playingState;
+    }
+
+    /**
+     * @return true if the song playing was opened and can be decoded and seeked.
+     */
+    public boolean isSongOpen() {
+        return bitstream != null;
+    }
+
+    /**
+     * @return the index of the frame after the last one written to the AudioDevice.
+     */
+    public int getPosition() {
+        return pcmBuffer.getPosition();
+    }
+
+    /**
+     * @return the number of decoded frames waiting to be written to the AudioDevice.
+     */
+    public int getBufferedFrames() {
+        return pcmBuffer.size();
+    }
+
+    /**
+     * @return the maximum number of decoded frames that can wait to be written to the AudioDevice.
+     */
+    public int getBufferCapacity() {
+        return pcmBuffer.capacity();
+    }
+
+    /**
+     * @return the number of submitted commands not yet applied.
+     */
+    public int getPendingCommands() {
+        return commands.size();
+    }
+
+    /**
+     * @return the time from submitting each command to the engine having applied it.
+     */
+    public LatencyStats getCommandLatency() {
+        return commandLatency;
+    }
+
+    /**
+     * @return the timings of the playback loop and the underruns of the output, over the last minute.
+     */
+    public PlaybackTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * @return how long, in nanoseconds, the last song transition without user input took, from the last frame
+     * of the previous song being decoded to the first frame of the next one being buffered.
+     */
+    public long getLastTransitionNanos() {
+        return lastTransitionNanos;
+    }
+
+    /**
+     * @return the number of song transitions without user input.
+     */
+    public long getGaplessTransitions() {
+        return gaplessTransitions.sum();
+    }
+
+    /**
+     * @return the number of song transitions without user input where the output ran out of frames,
+     * as in there was audible silence between the songs.
+     */
+    public long getTransitionGaps() {
+        return transitionGaps.sum();
+    }
+
+    /**
+     * @return the amount of audio written to the AudioDevice so far, in microseconds.
+     */
+    public long getPlayedMicros() {
+        return playedMicros;
+    }
+
+    /**
+     * @return the cache of decoded audio, for its statistics.
+     */
+    public PcmCache getPcmCache() {
+        return pcmCache;
+    }
+
+    /**
+     * @return the number of frames decoded for playback, not counting frames decoded to seek.
+     */
+    public long getFramesDecoded() {
+        return framesDecoded.sum();
+    }
+
+    /**
+     * Sets the statistics of the engine back to 0: command latency, timings, transitions, decoded frames and
+     * the counters of the PCM cache.
+     */
+    public void resetCounters() {
+        commandLatency.reset();
+        timings.reset();
+        gaplessTransitions.reset();
+        transitionGaps.reset();
+        framesDecoded.reset();
+        pcmCache.resetCounters();
+    }
+    //</editor-fold>
+
+    private boolean isDecoding() {
+        return playingState == 1 && bitstream != null;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                // only waits for commands when there is nothing to decode
+                PlayerCommand command;
+                if (isDecoding()) command = commands.poll();
+                else if (ending && playingState == 1) command = commands.poll(ENDING_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                else command = commands.take();
+
+                for (; command != null; command = commands.poll()) apply(command);
+
+                if (ending && playingState == 1 && pcmBuffer.size() == 0) stop(false);
+                else if (isDecoding()) decodeStep();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void apply(PlayerCommand command) {
+        // while the scrubber is dragged, only the newest of the queued seeks is applied
+        PlayerCommand next = commands.peek();
+        boolean superseded = command.type() == PlayerCommand.Type.SEEK && next != null && next.type() == PlayerCommand.Type.SEEK;
+        try {
+            if (!superseded) {
+                switch (command.type()) {
+                    case PLAY -> play(command.argument());
+                    case PAUSE -> pause();
+                    case RESUME -> resume();
+                    case NEXT -> next();
+                    case PREVIOUS -> previous();
+                    case SEEK -> seek(command.argument());
+                    case STOP -> {
+                        if (songPlaying != null) stop(true);
+                    }
+                    case REMOVE -> remove(command.argument());
+                }
+            }
+            commandLatency.record(System.nanoTime() - command.submittedNanos());
+            command.applied().complete(null);
+        } catch (JavaLayerException | IOException | RuntimeException ex) {
+            tasks.reportError("playback-engine", ex);
+            commandLatency.record(System.nanoTime() - command.submittedNanos());
+            command.applied().completeExceptionally(ex);
+        }
+    }
+
+    private void emit(PlayerEvent.Type type, Song song, int index) {
+        PlayerEvent event = new PlayerEvent(type, song, index, type == PlayerEvent.Type.SONG_REMOVED ? 1 : 0);
+        for (Consumer<PlayerEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException ex) {
+                tasks.reportError("playback-engine", ex);
+            }
+        }
+    }
+
+    //<editor-fold desc="Commands">
+    private void play(int index) {
+        if (index < 0 || index >= playlist.size()) return;
+        playlist.setCurrentIndex(index);
+        openSong(playlist.getCurrentSong(), false);
+    }
+
+    private void pause() {
+        if (songPlaying == null || playingState == 0) return;
+        setPlayingState(0);
+        emit(PlayerEvent.Type.PAUSED, songPlaying, -1);
+    }
+
+    private void resume() {
+        if (songPlaying == null || playingState == 1) return;
+        setPlayingState(1);
+        emit(PlayerEvent.Type.PLAYING, songPlaying, -1);
+    }
+
+    private void next() {
+        if (songPlaying == null) return;
+        if (playlist.moveToNext()) openSong(playlist.getCurrentSong(), false);
+        else stop(true);
+    }
+
+    private void previous() {
+        if (songPlaying == null) return;
+        playlist.moveToPrevious();
+        openSong(playlist.getCurrentSong(), false);
+    }
+
+    /**
+     * Moves playback of the current song to the specified frame. Also works while paused.
+     *
+     * @param frame Frame to skip to.
+     */
+    private void seek(int frame) throws JavaLayerException, IOException {
+        if (bitstream == null || frame < 0) return;
+        endDecodeBatch();
+        FlightEvents.Seek event = new FlightEvents.Seek();
+        event.begin();
+        int startFrame = currentFrame;
+        if (!firstFrame && pcmCache.isEnabled() && pcmCache.find(songPlaying.getUuid(), frame) != null) {
+            // the target was played recently: the bitstream stays where it is until decoding is needed again
+            if (bitstreamFrame < 0) bitstreamFrame = currentFrame;
+        } else {
+            if (bitstreamFrame >= 0) currentFrame = bitstreamFrame;
+            bitstreamFrame = -1;
+            skipToFrame(frame);
+        }
+        currentFrame = frame;
+        if (event.shouldCommit()) {
+            event.songUuid = songPlaying.getUuid();
+            event.startFrame = startFrame;
+            event.targetFrame = frame;
+            event.commit();
+        }
+        pcmBuffer.clear(frame);
+        timings.resetOutputClock();
+    }
+
+    private void remove(int index) {
+        Song playing = songPlaying;
+        // the playlist fixes the index of the current song if a song before it is removed
+        int result = playlist.remove(index);
+        if (result == playlist.SONG_NOT_FOUND) return;
+        if (result != playlist.CURRENT_SONG_REMOVED || playing == null) {
+            emit(PlayerEvent.Type.SONG_REMOVED, playing, index);
+            return;
+        }
+
+        // the next song already has the index of the removed one, and is the one playing after the change
+        Song next = playlist.getCurrentSong();
+        emit(PlayerEvent.Type.SONG_REMOVED, next, index);
+        if (next == null) stop(true);
+        else openSong(next, false);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Essential">
+    /**
+     * Starts playing a song. Unless the previous song ended by itself, its buffered frames are discarded.
+     *
+     * @param song    Song to play, or null to stop.
+     * @param gapless True if the previous song ended by itself, so the new one is decoded right after it.
+     */
+    private void openSong(Song song, boolean gapless) {
+        if (song == null) {
+            stop(true);
+            return;
+        }
+
+        endDecodeBatch();
+        ending = false;
+        if (!gapless) drainOutput(true);
+        closeObjects();
+        songPlaying = song;
+        currentFrame = 0;
+        bitstreamFrame = -1;
+        firstFrame = true;
+        gaplessStart = gapless;
+        startObjects();
+        setPlayingState(1);
+        prefetch.cancel();
+        buildFrameIndex(song);
+        prepareNextSong();
+        emit(PlayerEvent.Type.SONG_STARTED, song, playlist.getCurrentIndex());
+    }
+
+    /**
+     * Stops playback and closes the AudioDevice.
+     *
+     * @param discard True to drop the buffered frames instead of playing them.
+     */
+    private void stop(boolean discard) {
+        endDecodeBatch();
+        ending = false;
+        drainOutput(discard);
+        setPlayingState(0);
+        closeObjects();
+        closeDevice();
+        prefetch.cancel();
+        PreparedSong prepared = preparedSong.getAndSet(null);
+        if (prepared != null) closeQuietly(prepared.bitstream());
+        songPlaying = null;
+        emit(PlayerEvent.Type.STOPPED, null, -1);
+    }
+
+    /**
+     * Decodes the next frame of the current song into the ring, blocking while the ring is full.
+     * At the end of the song, moves on to the next one without waiting for the output stage.
+     */
+    private void decodeStep() throws InterruptedException {
+        long generation = pcmBuffer.generation();
+        int frame = currentFrame;
+        if (playCachedFrame(frame, generation)) return;
+
+        SampleBuffer output;
+        try {
+            if (bitstreamFrame >= 0) repositionBitstream();
+            output = decodeNextFrame();
+        } catch (JavaLayerException | IOException ex) {
+            // the rest of the file can't be decoded, so the song ends here
+            tasks.reportError("playback-engine", ex);
+            output = null;
+        }
+
+        if (output == null) {
+            endDecodeBatch();
+            pcmCache.endOfSong();
+            songEnded();
+            return;
+        }
+        currentFrame++;
+        framesDecoded.increment();
+        if (decodeBatch == null && FlightEvents.DECODE_BATCH.isEnabled()) {
+            decodeBatch = new FlightEvents.DecodeBatch();
+            decodeBatch.begin();
+            decodeBatch.songUuid = songPlaying.getUuid();
+            decodeBatch.firstFrame = frame;
+        }
+        if (decodeBatch != null && ++decodeBatch.frames == FlightEvents.DECODE_BATCH_FRAMES) endDecodeBatch();
+
+        if (firstFrame) {
+            firstFrame = false;
+            if (!prepareDevice(output)) return;
+            if (gaplessStart) recordTransition();
+        }
+        pcmCache.store(songPlaying.getUuid(), frame, output.getBuffer(), output.getBufferLength(),
+                output.getSampleFrequency(), output.getChannelCount());
+        pcmBuffer.put(output.getBuffer(), output.getBufferLength(), frame, generation);
+    }
+
+    /**
+     * Plays the current frame from the {@link PcmCache}, if it is there. The first frame of a song is always
+     * decoded, so the decoder and the AudioDevice are set up for its format.
+     *
+     * @return true if the frame was played from the cache.
+     */
+    private boolean playCachedFrame(int frame, long generation) throws InterruptedException {
+        if (firstFrame || !pcmCache.isEnabled()) return false;
+        String uuid = songPlaying.getUuid();
+        PcmCache.Segment segment = cachedSegment;
+        if (segment == null || !segment.contains(uuid, frame)) {
+            segment = cachedSegment = pcmCache.find(uuid, frame);
+            if (segment == null) return false;
+        }
+        if (segment.frequency() != deviceFrequency || segment.channels() != deviceChannels) return false;
+
+        if (bitstreamFrame < 0) bitstreamFrame = frame;
+        int length = segment.copyFrame(frame, cachedFrame);
+        currentFrame++;
+        pcmCache.recordHit();
+        pcmBuffer.put(cachedFrame, length, frame, generation);
+        return true;
+    }
+
+    /**
+     * Moves the bitstream from where it was left when frames started being played from the cache to the
+     * current frame.
+     */
+    private void repositionBitstream() throws JavaLayerException, IOException {
+        int target = currentFrame;
+        currentFrame = bitstreamFrame;
+        bitstreamFrame = -1;
+        skipToFrame(target);
+        currentFrame = target;
+    }
+
+    /**
+     * Called when the last frame of the current song was decoded. The next song is decoded right behind it
+     * in the ring, without silence; after the last song, the output plays what is left before stopping.
+     */
+    private void songEnded() {
+        closeObjects();
+        if (playlist.moveToNext()) {
+            transitionStart = System.nanoTime();
+            openSong(playlist.getCurrentSong(), true);
+        } else {
+            ending = true;
+        }
+    }
+
+    /**
+     * Updates the playing state, pausing or resuming the output stage.
+     *
+     * @param state 0 for paused and 1 for playing.
+     */
+    private void setPlayingState(int state) {
+        playingState = state;
+        pcmBuffer.setPaused(state == 0);
+        timings.resetOutputClock();
+    }
+
+    /**
+     * Decodes the next frame. The returned buffer belongs to the decoder and is overwritten by the next call.
+     *
+     * @return The decoded samples, or null if there are no more frames to play.
+     */
+    private SampleBuffer decodeNextFrame() throws JavaLayerException {
+        long start = System.nanoTime();
+        Header h = bitstream.readFrame();
+        if (h == null) return null;
+        long read = System.nanoTime();
+
+        SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+        bitstream.closeFrame();
+        timings.recordDecode(start, read, System.nanoTime());
+        return output;
+    }
+
+    /**
+     * Waits until the output stage is done with the buffered frames, so the AudioDevice can be closed.
+     *
+     * @param discard True to drop the buffered frames instead of playing them.
+     */
+    private void drainOutput(boolean discard) {
+        if (discard) pcmBuffer.clear(0);
+        try {
+            pcmBuffer.awaitEmpty();
+        } catch (InterruptedException ex) {
+            pcmBuffer.clear(0);
+            Thread.currentThread().interrupt();
+        }
+        // the output waits for the next frames on purpose
+        timings.resetOutputClock();
+    }
+
+    /**
+     * Decodes the next frame and discards the output, so the decoder's bit reservoir is filled.
+     *
+     * @return False if there are no more frames to decode.
+     */
+    private boolean warmUpNextFrame() throws JavaLayerException {
+        Header h = bitstream.readFrame();
+        if (h == null) return false;
+        decoder.decodeFrame(h, bitstream);
+        bitstream.closeFrame();
+        currentFrame++;
+        return true;
+    }
+
+    /**
+     * @return False if there are no more frames to skip.
+     */
+    private boolean skipNextFrame() throws BitstreamException {
+        Header h = bitstream.readFrame();
+        if (h == null) return false;
+        bitstream.closeFrame();
+        currentFrame++;
+        return true;
+    }
+
+    /**
+     * Positions the bitstream at the target frame, forwards or backwards, using the song's {@link FrameIndex}.
+     * Only the few frames needed to fill the bit reservoir before the target are read, so the cost doesn't
+     * depend on the target position. If the index isn't built yet, or can't be, falls back to skipping frame by
+     * frame.
+     *
+     * @param newFrame Frame to skip to.
+     */
+    private void skipToFrame(int newFrame) throws JavaLayerException, IOException {
+        // the index is built by a prefetch task, scanning the file here would stall the output
+        FrameIndex index = songPlaying.getBuiltFrameIndex();
+        if (index == null || index.size() == 0) {
+            if (newFrame < currentFrame) reopenBitstream();
+            int framesToSkip = newFrame - currentFrame;
+            boolean condition = true;
+            while (framesToSkip-- > 0 && condition) condition = skipNextFrame();
+            return;
+        }
+
+        int target = Math.min(newFrame, index.size());
+        int start = target < index.size() ? index.warmUpStart(target) : target;
+        int offset = start < index.size() ? index.offsetOf(start) : songPlaying.getFileSize();
+        bitstream.close();
+        bitstream = new Bitstream(source.open(songPlaying, offset));
+        currentFrame = start;
+        boolean condition = true;
+        while (currentFrame < target && condition) condition = warmUpNextFrame();
+    }
+
+    /**
+     * Reopens the bitstream at the beginning of the song, keeping the decoder and the AudioDevice.
+     */
+    private void reopenBitstream() throws BitstreamException, IOException {
+        bitstream.close();
+        bitstream = new Bitstream(source.open(songPlaying, 0));
+        currentFrame = 0;
+    }
+
+    /**
+     * Opens the bitstream and decoder of the current song, using the ones prepared in the background if they
+     * match. The AudioDevice is kept open across songs and only checked in {@link #prepareDevice(SampleBuffer)}.
+     */
+    private void startObjects() {
+        FlightEvents.SongOpen event = new FlightEvents.SongOpen();
+        event.begin();
+        PreparedSong prepared = preparedSong.getAndSet(null);
+        boolean prefetched = prepared != null && prepared.song() == songPlaying;
+        if (prefetched) {
+            bitstream = prepared.bitstream();
+            decoder = prepared.decoder();
+        } else {
+            if (prepared != null) closeQuietly(prepared.bitstream());
+            try {
+                decoder = new Decoder();
+                bitstream = new Bitstream(source.open(songPlaying, 0));
+            } catch (IOException ignored) {
+                bitstream = null;
+            }
+        }
+
+        if (event.shouldCommit()) {
+            event.songUuid = songPlaying.getUuid();
+            event.gapless = gaplessStart;
+            event.prefetched = prefetched;
+            event.opened = bitstream != null;
+            event.commit();
+        }
+    }
+
+    private void closeObjects() {
+        if (bitstream != null) {
+            FlightEvents.SongClose event = new FlightEvents.SongClose();
+            event.begin();
+            closeQuietly(bitstream);
+            bitstream = null;
+            if (event.shouldCommit()) {
+                event.songUuid = songPlaying == null ? null : songPlaying.getUuid();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Commits the {@link FlightEvents.DecodeBatch} being recorded, if any, because it is full or because
+     * decoding is about to be interrupted.
+     */
+    private void endDecodeBatch() {
+        if (decodeBatch == null) return;
+        decodeBatch.commit();
+        decodeBatch = null;
+    }
+
+    /**
+     * Opens the bitstream and decoder of the song after the current one in a prefetch task, so the
+     * transition between them doesn't wait for the file to be opened, then builds its {@link FrameIndex}.
+     */
+    private void prepareNextSong() {
+        Song next = playlist.getNextSong();
+        if (next == null) return;
+
+        prefetch.submit("next-song", () -> {
+            PreparedSong prepared = new PreparedSong(next, new Bitstream(source.open(next, 0)), new Decoder());
+            // cancelled while opening: playback stopped or moved on, so nobody will use it
+            if (Thread.currentThread().isInterrupted()) {
+                closeQuietly(prepared.bitstream());
+                return;
+            }
+            PreparedSong previous = preparedSong.getAndSet(prepared);
+            if (previous != null) closeQuietly(previous.bitstream());
+            try {
+                next.getFrameIndex();
+            } catch (IOException ignored) {
+                // seeks in the next song skip frame by frame
+            }
+        });
+    }
+
+    /**
+     * Builds the {@link FrameIndex} of a song in a prefetch task, so the first seek in it doesn't read the whole
+     * file on the engine thread. Until the index is built, seeks skip frame by frame.
+     */
+    private void buildFrameIndex(Song song) {
+        if (song.getBuiltFrameIndex() != null) return;
+        prefetch.submit("frame-index", () -> {
+            try {
+                song.getFrameIndex();
+            } catch (IOException ignored) {
+                // seeks in this song keep skipping frame by frame
+            }
+        });
+    }
+
+    /**
+     * Makes sure the AudioDevice is open with the format of the first decoded frame of a song.
+     * The device is kept when the format is the same as the previous song's, so there is no gap between them.
+     * Otherwise, the previous song is played until the end and the device is reopened.
+     *
+     * @param output First decoded frame of the song.
+     * @return False if the device couldn't be opened.
+     */
+    private boolean prepareDevice(SampleBuffer output) {
+        if (device != null && output.getSampleFrequency() == deviceFrequency && output.getChannelCount() == deviceChannels) {
+            return true;
+        }
+
+        drainOutput(false);
+        closeDevice();
+        try {
+            AudioDevice newDevice = sink.createDevice(output.getSampleFrequency(), output.getChannelCount());
+            newDevice.open(decoder);
+            deviceFrequency = output.getSampleFrequency();
+            deviceChannels = output.getChannelCount();
+            device = newDevice;
+            timings.resetOutputClock();
+            return true;
+        } catch (JavaLayerException ex) {
+            closeObjects();
+            return false;
+        }
+    }
+
+    /**
+     * Writes a decoded frame to the AudioDevice. Called by the output thread.
+     */
+    private void writeFrame(short[] samples, int length, int frame) throws JavaLayerException {
+        AudioDevice output = device;
+        if (output != null) {
+            long start = System.nanoTime();
+            output.write(samples, 0, length);
+            long audioNanos = length * 1_000_000_000L / ((long) deviceFrequency * deviceChannels);
+            timings.recordWrite(start, System.nanoTime(), audioNanos);
+            playedMicros += audioNanos / 1000;
+        }
+    }
+
+    private void closeDevice() {
+        if (device != null) {
+            device.close();
+            device = null;
+        }
+    }
+
+    /**
+     * Records how long the decode stage took to go from the last frame of a song to the first one of the next,
+     * and whether the output ran out of frames meanwhile.
+     */
+    private void recordTransition() {
+        lastTransitionNanos = System.nanoTime() - transitionStart;
+        gaplessTransitions.increment();
+        if (pcmBuffer.size() == 0) transitionGaps.increment();
+    }
+
+    private static void closeQuietly(Bitstream stream) {
+        try {
+            stream.close();
+        } catch (BitstreamException ignored) {
+        }
+    }
+    //</editor-fold>
+}
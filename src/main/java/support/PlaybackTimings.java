@@ -0,0 +1,152 @@
+package support;
+
+/**
+ * Timings of the playback loop, to find out where the time goes when the audio glitches: reading and decoding
+ * each frame on the engine thread, writing it to the AudioDevice on the output thread and waiting for the
+ * lock of the queue, each in a {@link LatencyHistogram} over the last minute.<br>
+ * Underruns are detected by comparing the wall-clock time since the output started with the amount of audio
+ * written to the device in that time. A frame that arrives after the device should have played everything
+ * written before it means the device ran out of audio. The length of each silence is recorded, so the count
+ * of {@link #getUnderruns()} is the number of underruns in the last minute.<br>
+ * Recording reads the clock 3 times per frame on the engine thread and twice on the output thread, and adds
+ * to atomic counters. That is well under 1% of the time it takes to decode a frame.
+ */
+public final class PlaybackTimings {
+
+    /**
+     * How late a frame can reach the device before it counts as an underrun, in nanoseconds, to ignore the
+     * jitter of the clock and of the device's own buffer.
+     */
+    private static final long UNDERRUN_TOLERANCE_NANOS = 5_000_000;
+
+    private final LatencyHistogram readFrame = new LatencyHistogram();
+    private final LatencyHistogram decodeFrame = new LatencyHistogram();
+    private final LatencyHistogram deviceWrite = new LatencyHistogram();
+    private final LatencyHistogram underruns = new LatencyHistogram();
+    private final LockStats queueLock;
+
+    private volatile int clockResets;       // written only by the engine thread
+    // written only by the output thread
+    private int clockResetsSeen = -1;
+    private long clockStartNanos;
+    private long audioWrittenNanos;
+
+    /**
+     * @param queueLock Lock statistics of the queue the engine plays from.
+     */
+    PlaybackTimings(LockStats queueLock) {
+        this.queueLock = queueLock;
+    }
+
+    /**
+     * Records the decoding of a frame. Called by the engine thread.
+     *
+     * @param startNanos   Time before reading the frame.
+     * @param readNanos    Time after reading the frame.
+     * @param decodedNanos Time after decoding the frame.
+     */
+    void recordDecode(long startNanos, long readNanos, long decodedNanos) {
+        readFrame.record(readNanos - startNanos, decodedNanos);
+        decodeFrame.record(decodedNanos - readNanos, decodedNanos);
+    }
+
+    /**
+     * Restarts the output clock, because the output was paused, emptied or reopened on purpose and the
+     * silence that follows is not an underrun. Called by the engine thread.
+     */
+    void resetOutputClock() {
+        clockResets++;
+    }
+
+    /**
+     * Records the writing of a frame to the AudioDevice and checks whether the device ran out of audio before
+     * it. Called by the output thread.
+     *
+     * @param startNanos   Time before writing the frame.
+     * @param endNanos     Time after writing the frame.
+     * @param audioNanos   Duration of the audio in the frame.
+     */
+    void recordWrite(long startNanos, long endNanos, long audioNanos) {
+        deviceWrite.record(endNanos - startNanos, endNanos);
+
+        int resets = clockResets;
+        if (resets != clockResetsSeen) {
+            clockResetsSeen = resets;
+            clockStartNanos = startNanos;
+            audioWrittenNanos = 0;
+        } else {
+            // the device should still be playing what was written before this frame
+            long silence = startNanos - (clockStartNanos + audioWrittenNanos);
+            if (silence > UNDERRUN_TOLERANCE_NANOS) {
+                underruns.record(silence, endNanos);
+                clockStartNanos = startNanos;
+                audioWrittenNanos = 0;
+            }
+        }
+        audioWrittenNanos += audioNanos;
+    }
+
+    /**
+     * @return the time taken by Bitstream.readFrame.
+     */
+    public LatencyHistogram getReadFrame() {
+        return readFrame;
+    }
+
+    /**
+     * @return the time taken by Decoder.decodeFrame.
+     */
+    public LatencyHistogram getDecodeFrame() {
+        return decodeFrame;
+    }
+
+    /**
+     * @return the time AudioDevice.write blocked.
+     */
+    public LatencyHistogram getDeviceWrite() {
+        return deviceWrite;
+    }
+
+    /**
+     * @return the length of the silences where the device ran out of audio.
+     */
+    public LatencyHistogram getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * @return the time threads waited for the write lock of the queue.
+     */
+    public LatencyHistogram getLockWait() {
+        return queueLock.getWaitHistogram();
+    }
+
+    /**
+     * @return the number of underruns in the last minute.
+     */
+    public long getUnderrunsPerMinute() {
+        return underruns.getSnapshot().count();
+    }
+
+    /**
+     * @return a summary of every timing, one per line.
+     */
+    public String summary() {
+        return "readFrame    " + readFrame.getSnapshot() + System.lineSeparator()
+                + "decodeFrame  " + decodeFrame.getSnapshot() + System.lineSeparator()
+                + "device.write " + deviceWrite.getSnapshot() + System.lineSeparator()
+                + "lock wait    " + getLockWait().getSnapshot() + System.lineSeparator()
+                + "underruns    " + underruns.getSnapshot();
+    }
+
+    /**
+     * Forgets every recorded timing.
+     */
+    public void reset() {
+        readFrame.reset();
+        decodeFrame.reset();
+        deviceWrite.reset();
+        underruns.reset();
+        queueLock.getWaitHistogram().reset();
+    }
+}
@@ -0,0 +1,45 @@
+package support;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Command sent to the {@link PlaybackEngine}. Commands are applied one at a time, in the order they were
+ * submitted, by the engine thread.
+ *
+ * @param type           What the command does.
+ * @param argument       Queue index for {@link Type#PLAY} and {@link Type#REMOVE}, frame for {@link Type#SEEK},
+ *                       ignored otherwise.
+ * @param submittedNanos {@link System#nanoTime()} when the command was submitted.
+ * @param applied        Completed once the engine has applied the command.
+ */
+public record PlayerCommand(Type type, int argument, long submittedNanos, CompletableFuture<Void> applied) {
+
+    public enum Type {
+        /**
+         * Starts playing the song at the queue index in the argument.
+         */
+        PLAY,
+        PAUSE,
+        RESUME,
+        NEXT,
+        PREVIOUS,
+        /**
+         * Moves playback of the current song to the frame in the argument.
+         */
+        SEEK,
+        STOP,
+        /**
+         * Removes the song at the queue index in the argument, skipping to the next one if it is playing.
+         */
+        REMOVE
+    }
+
+    /**
+     * @param type     What the command does.
+     * @param argument See {@link PlayerCommand}.
+     * @return a new command, submitted now.
+     */
+    static PlayerCommand of(Type type, int argument) {
+        return new PlayerCommand(type, argument, System.nanoTime(), new CompletableFuture<>());
+    }
+}
@@ -0,0 +1,302 @@
+package support;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Playback core of the player, independent of any user interface: the queue, the {@link PlaybackEngine} that
+ * plays it and the {@link TaskRuntime} that runs the background work. Clients such as the Swing window or
+ * the headless runner drive it through the queue and transport methods, which can be called from any thread,
+ * and follow it through {@link PlayerEvent}s and position updates.<br>
+ * Listeners are called on the engine thread, on the position thread or on the thread that changed the queue,
+ * so a client with its own UI thread must hand the calls off to it.
+ */
+public class PlayerCore implements AutoCloseable {
+
+    /**
+     * Receives the position of the output while a song is playing.
+     */
+    @FunctionalInterface
+    public interface PositionListener {
+        /**
+         * @param song           Song playing.
+         * @param positionMillis Position of the output in the song, in milliseconds.
+         */
+        void positionChanged(Song song, long positionMillis);
+    }
+
+    private final TaskRuntime tasks = new TaskRuntime();
+    private final Playlist playlist = new Playlist();
+    private final PlaybackEngine engine;
+    private final SeekWorker seekWorker;
+    private final TaskRuntime.Scope positionScope = tasks.newScope("position");
+    private final List<Consumer<PlayerEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final List<PositionListener> positionListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Interval between position updates. Their rate can be set with the "player.uiRefreshHz" system property.
+     */
+    private final long positionPeriodMillis = 1000 / Math.max(1, Integer.getInteger("player.uiRefreshHz", 10));
+    private Thread positionTicker;      // guarded by this
+
+    /**
+     * Constructs a {@link PlayerCore} with an empty queue and starts its threads.
+     *
+     * @param sink Where the decoded audio is written, see {@link AudioSink#fromProperty(String)}.
+     */
+    public PlayerCore(AudioSink sink) {
+        engine = new PlaybackEngine(playlist, sink, tasks);
+        // the worker waits for each seek to be applied, so only the newest target of a drag is submitted
+        seekWorker = new SeekWorker(frame -> engine.submit(PlayerCommand.Type.SEEK, frame).get(), tasks.newScope("seek"));
+        engine.addListener(this::onEngineEvent);
+        // the metadata cache is shared by the whole player, so its errors go to the runtime of the newest core
+        MetadataCache.setErrorHandler(tasks::reportError);
+    }
+
+    /**
+     * @param listener Listener to be called for every {@link PlayerEvent}.
+     */
+    public void addListener(Consumer<PlayerEvent> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to be called with the position of the output while a song is playing, at the
+     *                 rate set by the "player.uiRefreshHz" system property.
+     */
+    public void addPositionListener(PositionListener listener) {
+        positionListeners.add(listener);
+    }
+
+    //<editor-fold desc="Queue">
+    /**
+     * Appends songs to the queue and emits {@link PlayerEvent.Type#SONGS_ADDED}.
+     *
+     * @param songs Songs to be appended.
+     */
+    public synchronized void addSongs(List<Song> songs) {
+        if (songs.isEmpty()) return;
+        int first = playlist.size();
+        for (Song song : songs) playlist.add(song);
+        emit(new PlayerEvent(PlayerEvent.Type.SONGS_ADDED, engine.getSongPlaying(), first, songs.size()));
+    }
+
+    /**
+     * Removes a song from the queue, skipping to the next one if it is playing.
+     *
+     * @param index Queue index of the song.
+     * @return a future completed once the song was removed.
+     */
+    public CompletableFuture<Void> remove(int index) {
+        return engine.submit(PlayerCommand.Type.REMOVE, index);
+    }
+
+    /**
+     * Shuffles or unshuffles the queue. If a song is playing, it becomes the first one of the shuffled order.
+     */
+    public void toggleShuffle() {
+        FlightEvents.ShuffleToggle event = new FlightEvents.ShuffleToggle();
+        event.begin();
+        playlist.toggleShuffle(engine.getPlayingState() == 1);
+        if (event.shouldCommit()) {
+            event.shuffled = playlist.isShuffled();
+            event.queueSize = playlist.size();
+            event.commit();
+        }
+        emit(new PlayerEvent(PlayerEvent.Type.QUEUE_REORDERED, engine.getSongPlaying(), -1, 0));
+    }
+
+    /**
+     * Turns looping of the queue on or off.
+     */
+    public void toggleLooping() {
+        playlist.toggleLooping();
+        emit(new PlayerEvent(PlayerEvent.Type.LOOP_CHANGED, engine.getSongPlaying(), -1, 0));
+    }
+
+    /**
+     * Renders the songs of the queue, in the order they would be played, to WAV files. Playback is not
+     * affected, and songs added or removed later are not part of the export.
+     *
+     * @param directory Directory where the WAV files are written.
+     * @return the running export, already started.
+     */
+    public QueueExport exportQueue(Path directory) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0, size = playlist.size(); i < size; i++) {
+            Song song = playlist.get(i);
+            if (song != null) songs.add(song);
+        }
+        QueueExport export = new QueueExport(songs, directory);
+        export.start().whenComplete((result, ex) -> {
+            if (result != null) result.failures().forEach((song, error) -> tasks.reportError("export", error));
+            else if (ex != null && !export.isCancelled()) tasks.reportError("export", ex);
+        });
+        return export;
+    }
+
+    /**
+     * @return the queue. Songs must only be added and removed through this class.
+     */
+    public Playlist getPlaylist() {
+        return playlist;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Transport">
+    public CompletableFuture<Void> play(int index) {
+        return engine.submit(PlayerCommand.Type.PLAY, index);
+    }
+
+    public CompletableFuture<Void> pause() {
+        return engine.submit(PlayerCommand.Type.PAUSE);
+    }
+
+    public CompletableFuture<Void> resume() {
+        return engine.submit(PlayerCommand.Type.RESUME);
+    }
+
+    public CompletableFuture<Void> togglePlayPause() {
+        return engine.getPlayingState() == 1 ? pause() : resume();
+    }
+
+    public CompletableFuture<Void> next() {
+        return engine.submit(PlayerCommand.Type.NEXT);
+    }
+
+    public CompletableFuture<Void> previous() {
+        return engine.submit(PlayerCommand.Type.PREVIOUS);
+    }
+
+    public CompletableFuture<Void> stop() {
+        return engine.submit(PlayerCommand.Type.STOP);
+    }
+
+    /**
+     * Moves playback of the current song to the specified frame. While a seek is running, newer requests
+     * replace each other and only the newest one is applied.
+     *
+     * @param frame Frame to skip to, must not be negative.
+     */
+    public void seek(int frame) {
+        seekWorker.submit(frame);
+    }
+    //</editor-fold>
+
+    /**
+     * Stops playback, then cancels and waits for every background task.
+     */
+    @Override
+    public void close() {
+        if (tasks.isClosed()) return;
+        engine.close();
+        tasks.close();
+    }
+
+    //<editor-fold desc="Getters">
+    /**
+     * @return the song being played or paused, or null if stopped.
+     */
+    public Song getSongPlaying() {
+        return engine.getSongPlaying();
+    }
+
+    /**
+     * @return 1 if playing and 0 if paused or stopped.
+     */
+    public int getPlayingState() {
+        return engine.getPlayingState();
+    }
+
+    /**
+     * @return true if the song playing was opened and can be decoded and seeked.
+     */
+    public boolean isSongOpen() {
+        return engine.isSongOpen();
+    }
+
+    /**
+     * @return the engine, for its statistics.
+     */
+    public PlaybackEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return the runtime where clients can run their own background work, e.g. imports.
+     */
+    public TaskRuntime getTasks() {
+        return tasks;
+    }
+
+    /**
+     * @return the number of seeks requested during the last full second.
+     */
+    public long getSeekRequestsPerSecond() {
+        return seekWorker.getRequestsPerSecond();
+    }
+
+    /**
+     * @return the total number of seeks requested.
+     */
+    public long getSeekRequests() {
+        return seekWorker.getRequestCount();
+    }
+
+    /**
+     * @return the number of seeks actually applied. Requests superseded by a newer one are not applied.
+     */
+    public long getSeeksExecuted() {
+        return seekWorker.getExecutedCount();
+    }
+
+    /**
+     * @return the wait times of the lock shared by seek requests and the seek worker.
+     */
+    public LockStats getSeekLockStats() {
+        return seekWorker.getLockStats();
+    }
+    //</editor-fold>
+
+    private void onEngineEvent(PlayerEvent event) {
+        switch (event.type()) {
+            case SONG_STARTED, PLAYING -> startPositionTicker();
+            case PAUSED, STOPPED -> stopPositionTicker();
+            default -> {
+            }
+        }
+        emit(event);
+    }
+
+    private void emit(PlayerEvent event) {
+        for (Consumer<PlayerEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException ex) {
+                tasks.reportError("listener", ex);
+            }
+        }
+    }
+
+    private synchronized void startPositionTicker() {
+        if (positionTicker != null && positionTicker.isAlive()) return;
+        positionTicker = positionScope.submit("ticker", () -> {
+            while (true) {
+                Thread.sleep(positionPeriodMillis);
+                Song song = engine.getSongPlaying();
+                if (song == null || engine.getPlayingState() == 0) continue;
+                long positionMillis = (long) (engine.getPosition() * song.getMsPerFrame());
+                // indexed, so publishing doesn't allocate an iterator; listeners are only ever added
+                for (int i = 0; i < positionListeners.size(); i++) positionListeners.get(i).positionChanged(song, positionMillis);
+            }
+        });
+    }
+
+    private synchronized void stopPositionTicker() {
+        positionScope.cancel();
+        positionTicker = null;
+    }
+}
@@ -0,0 +1,31 @@
+package support;
+
+/**
+ * State change emitted by the {@link PlaybackEngine} on the engine thread, or by the {@link PlayerCore} on the
+ * thread that changed the queue.
+ *
+ * @param type  What changed.
+ * @param song  Song playing after the change, or null if there is none.
+ * @param index Queue index of the song for {@link Type#SONG_STARTED}, of the removed song for
+ *              {@link Type#SONG_REMOVED}, of the first added song for {@link Type#SONGS_ADDED}, and -1 otherwise.
+ * @param count Number of songs added or removed, 0 for the other types.
+ */
+public record PlayerEvent(Type type, Song song, int index, int count) {
+
+    public enum Type {
+        SONG_STARTED,
+        PLAYING,
+        PAUSED,
+        STOPPED,
+        SONG_REMOVED,
+        SONGS_ADDED,
+        /**
+         * The queue was shuffled or unshuffled.
+         */
+        QUEUE_REORDERED,
+        /**
+         * Looping was turned on or off.
+         */
+        LOOP_CHANGED
+    }
+}
@@ -0,0 +1,235 @@
+package support;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Live state and counters of a {@link PlayerCore} as a platform MBean, so running players can be watched with
+ * JConsole or any JMX client without attaching a profiler. Every attribute is read on demand from the
+ * counters the core already keeps, which are striped or written by a single thread, so the playback threads
+ * do no extra work for the monitor.
+ */
+public class PlayerMonitor implements PlayerMonitorMBean, AutoCloseable {
+
+    /**
+     * Name under which the first monitor of the JVM is registered. Later ones get an "id" key.
+     */
+    public static final String OBJECT_NAME = "mp3player:type=Player";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final PlayerCore core;
+    private final TaskRuntime.Scope importScope;
+    private ObjectName name;
+
+    // last reading of the decoded frames, guarded by this
+    private long rateFrames;
+    private long rateNanos;
+    private double framesPerSecond;
+
+    /**
+     * @param core        Core to be monitored.
+     * @param importScope Scope where imports parse their files, or null if the player doesn't import.
+     */
+    public PlayerMonitor(PlayerCore core, TaskRuntime.Scope importScope) {
+        this.core = core;
+        this.importScope = importScope;
+        rateFrames = core.getEngine().getFramesDecoded();
+        rateNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates a monitor and registers it in the platform MBean server. Failures are reported to the runtime
+     * of the core, since the player works without it.
+     *
+     * @param core        Core to be monitored.
+     * @param importScope Scope where imports parse their files, or null if the player doesn't import.
+     * @return the monitor, to be closed with the core.
+     */
+    public static PlayerMonitor register(PlayerCore core, TaskRuntime.Scope importScope) {
+        PlayerMonitor monitor = new PlayerMonitor(core, importScope);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            for (int id = 2; ; id++) {
+                try {
+                    server.registerMBean(monitor, name);
+                    monitor.name = name;
+                    break;
+                } catch (InstanceAlreadyExistsException ex) {
+                    name = new ObjectName(OBJECT_NAME + ",id=" + id);
+                }
+            }
+        } catch (JMException ex) {
+            core.getTasks().reportError("jmx", ex);
+        }
+        return monitor;
+    }
+
+    /**
+     * Unregisters the monitor, if it was registered.
+     */
+    @Override
+    public void close() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (InstanceNotFoundException ignored) {
+        } catch (JMException ex) {
+            core.getTasks().reportError("jmx", ex);
+        }
+        name = null;
+    }
+
+    //<editor-fold desc="Attributes">
+    @Override
+    public int getQueueLength() {
+        return core.getPlaylist().size();
+    }
+
+    @Override
+    public String getCurrentSongUuid() {
+        Song song = core.getSongPlaying();
+        return song == null ? null : song.getUuid();
+    }
+
+    @Override
+    public int getCurrentFrame() {
+        return core.getSongPlaying() == null ? 0 : core.getEngine().getPosition();
+    }
+
+    @Override
+    public int getTotalFrames() {
+        Song song = core.getSongPlaying();
+        return song == null ? 0 : song.getNumFrames();
+    }
+
+    @Override
+    public String getPlaybackState() {
+        if (core.getSongPlaying() == null) return "STOPPED";
+        return core.getPlayingState() == 1 ? "PLAYING" : "PAUSED";
+    }
+
+    @Override
+    public synchronized double getDecodedFramesPerSecond() {
+        long frames = core.getEngine().getFramesDecoded();
+        long now = System.nanoTime();
+        if (now - rateNanos >= NANOS_PER_SECOND) {
+            // a reset in between would make the difference negative
+            framesPerSecond = Math.max(0, frames - rateFrames) * (double) NANOS_PER_SECOND / (now - rateNanos);
+            rateFrames = frames;
+            rateNanos = now;
+        }
+        return framesPerSecond;
+    }
+
+    @Override
+    public long getFramesDecoded() {
+        return core.getEngine().getFramesDecoded();
+    }
+
+    @Override
+    public int getPendingCommands() {
+        return core.getEngine().getPendingCommands();
+    }
+
+    @Override
+    public long getSeekRequests() {
+        return core.getSeekRequests();
+    }
+
+    @Override
+    public long getSeeksExecuted() {
+        return core.getSeeksExecuted();
+    }
+
+    @Override
+    public int getImportQueueDepth() {
+        return importScope == null ? 0 : importScope.getActiveTasks();
+    }
+
+    @Override
+    public long getQueueLockAcquisitions() {
+        return core.getPlaylist().getLockStats().getAcquisitions();
+    }
+
+    @Override
+    public long getQueueLockContentions() {
+        return core.getPlaylist().getLockStats().getContendedAcquisitions();
+    }
+
+    @Override
+    public long getQueueLockMaxWaitNanos() {
+        return core.getPlaylist().getLockStats().getMaxWaitNanos();
+    }
+
+    @Override
+    public long getSeekLockAcquisitions() {
+        return core.getSeekLockStats().getAcquisitions();
+    }
+
+    @Override
+    public long getSeekLockContentions() {
+        return core.getSeekLockStats().getContendedAcquisitions();
+    }
+
+    @Override
+    public long getUnderrunsPerMinute() {
+        return core.getEngine().getTimings().getUnderrunsPerMinute();
+    }
+
+    @Override
+    public double getPcmCacheHitRate() {
+        return core.getEngine().getPcmCache().getHitRate();
+    }
+
+    @Override
+    public long getPcmCacheBytesHeld() {
+        return core.getEngine().getPcmCache().getBytesHeld();
+    }
+
+    @Override
+    public long getPcmCacheEvictions() {
+        return core.getEngine().getPcmCache().getEvictions();
+    }
+
+    @Override
+    public long getBackgroundErrors() {
+        return core.getTasks().getErrors();
+    }
+
+    @Override
+    public long getMetadataCacheErrors() {
+        return MetadataCache.shared().getErrors();
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Operations">
+    @Override
+    public String[] dumpQueue() {
+        // the lock of the queue is only held to copy it; the lines are formatted from the copy
+        Song[] songs = core.getPlaylist().toArray();
+        Song playing = core.getSongPlaying();
+        String[] lines = new String[songs.length];
+        for (int i = 0; i < songs.length; i++) {
+            Song song = songs[i];
+            lines[i] = String.format("%s%5d  %s - %s (%s) %s", song == playing ? ">" : " ", i, song.getArtist(),
+                    song.getTitle(), song.getStrLength(), song.getUuid());
+        }
+        return lines;
+    }
+
+    @Override
+    public synchronized void resetCounters() {
+        core.getEngine().resetCounters();
+        core.getPlaylist().getLockStats().reset();
+        core.getSeekLockStats().reset();
+        rateFrames = 0;
+        rateNanos = System.nanoTime();
+        framesPerSecond = 0;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,106 @@
+package support;
+
+/**
+ * Management interface of {@link PlayerMonitor}, shown by JConsole and other JMX clients.
+ */
+public interface PlayerMonitorMBean {
+
+    /**
+     * @return the number of songs in the queue.
+     */
+    int getQueueLength();
+
+    /**
+     * @return the UUID of the song being played or paused, or null if stopped.
+     */
+    String getCurrentSongUuid();
+
+    /**
+     * @return the frame of the song being played, or 0 if stopped.
+     */
+    int getCurrentFrame();
+
+    /**
+     * @return the number of frames of the song being played, or 0 if stopped.
+     */
+    int getTotalFrames();
+
+    /**
+     * @return PLAYING, PAUSED or STOPPED.
+     */
+    String getPlaybackState();
+
+    /**
+     * @return the number of frames decoded per second since the previous reading, at least one second ago.
+     */
+    double getDecodedFramesPerSecond();
+
+    /**
+     * @return the number of frames decoded since the counters were reset.
+     */
+    long getFramesDecoded();
+
+    /**
+     * @return the number of commands submitted to the engine and not yet applied.
+     */
+    int getPendingCommands();
+
+    long getSeekRequests();
+
+    long getSeeksExecuted();
+
+    /**
+     * @return the number of files of the running import waiting to be parsed or being parsed.
+     */
+    int getImportQueueDepth();
+
+    long getQueueLockAcquisitions();
+
+    /**
+     * @return the number of times the write lock of the queue was held by another thread when requested.
+     */
+    long getQueueLockContentions();
+
+    long getQueueLockMaxWaitNanos();
+
+    long getSeekLockAcquisitions();
+
+    /**
+     * @return the number of times the lock of the seek worker was held by another thread when requested.
+     */
+    long getSeekLockContentions();
+
+    /**
+     * @return the number of times the output ran out of audio during the last minute.
+     */
+    long getUnderrunsPerMinute();
+
+    /**
+     * @return the fraction of the frames played from the PCM cache since the counters were reset, from 0 to 1.
+     */
+    double getPcmCacheHitRate();
+
+    /**
+     * @return the bytes of direct memory held by the PCM cache.
+     */
+    long getPcmCacheBytesHeld();
+
+    long getPcmCacheEvictions();
+
+    long getBackgroundErrors();
+
+    /**
+     * @return the number of I/O errors of the metadata cache, which is disabled if its file couldn't be opened.
+     */
+    long getMetadataCacheErrors();
+
+    /**
+     * @return one line per song of the queue, in playing order, with the song playing marked by "&gt;".
+     */
+    String[] dumpQueue();
+
+    /**
+     * Sets the statistics of the engine and the lock counters back to 0.
+     */
+    void resetCounters();
+}
@@ -1,26 +1,22 @@
 package support;
 
 import com.formdev.flatlaf.FlatLightLaf;
-import com.mpatric.mp3agic.*;
 
 import javax.swing.*;
 import javax.swing.event.MouseInputAdapter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Objects;
 import java.util.UUID;
 
 @SuppressWarnings("FieldCanBeLocal")
 public class PlayerWindow {
-    private final String[] COLUMN_TITLES = new String[]{"Title", "Album", "Artist", "Year", "Length", "Path"};
     public final int BUTTON_ICON_PLAY = 0;
     public final int BUTTON_ICON_PAUSE = 1;
 
@@ -51,9 +47,12 @@ public class PlayerWindow {
     private final ImageIcon iconShuffle;
     private final ImageIcon iconStop;
 
+    private int displayedSecond = -1;
+    private int displayedTotalTime = -1;
+
     /**
      * @param windowTitle               String to be used as the window title.
-     * @param queueArray                String[][] with the queue. The array should contain in each position one array
+     * @param queueModel                TableModel with the queue, e.g. a {@link QueueTableModel}.
      * @param buttonListenerPlayNow     ActionListener for the "Play Now" button.
      * @param buttonListenerRemove      ActionListener for the "Remove" button.
      * @param buttonListenerAddSong     ActionListener for the "Add Song" button.
@@ -67,7 +66,7 @@ public class PlayerWindow {
      */
     public PlayerWindow(
             String windowTitle,
-            String[][] queueArray,
+            TableModel queueModel,
             ActionListener buttonListenerPlayNow,
             ActionListener buttonListenerRemove,
             ActionListener buttonListenerAddSong,
@@ -135,7 +134,7 @@ public class PlayerWindow {
 
         queuePanel.setLayout(new BorderLayout());
         queueListPane.setViewportView(queueList);
-        setQueueList(queueArray);
+        setQueueList(queueModel);
         queuePanelButtons.setLayout(new BoxLayout(queuePanelButtons, BoxLayout.X_AXIS));
         queuePanelButtons.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
         playNowButton = new JButton("Play Now");
@@ -272,11 +271,13 @@ public class PlayerWindow {
     }
 
     /**
-     * Sets the information to be displayed in the queue list. Should be called whenever a song is added or removed.
+     * Sets the model of the queue list. Should be called only once: the model reports added, removed and
+     * reordered songs through its own events.
      *
-     * @param queueArray String[][] with the queue. The array should contain in each position one Song converted to array.
+     * @param queueModel TableModel with the queue. Each row should be one Song, with the columns of
+     *                   {@link QueueTableModel}.
      */
-    public void setQueueList(String[][] queueArray) {
+    private void setQueueList(TableModel queueModel) {
         queueList.setShowHorizontalLines(true);
         queueList.setDragEnabled(false);
         queueList.setColumnSelectionAllowed(false);
@@ -284,12 +285,7 @@ public class PlayerWindow {
         queueList.getTableHeader().setResizingAllowed(false);
         queueList.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
         queueList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        queueList.setModel(new DefaultTableModel(queueArray, COLUMN_TITLES) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        });
+        queueList.setModel(queueModel);
         queueList.getSelectionModel().addListSelectionListener(e -> {
             if (queueList.getSelectionModel().isSelectionEmpty()) {
                 playNowButton.setEnabled(false);
@@ -406,14 +402,22 @@ public class PlayerWindow {
 
     /**
      * Updates the labels and scrubber values in the mini-player.
+     * Labels are only reformatted when the displayed second or the total time changes.
      *
      * @param currentTime Current time of the current song in milliseconds.
      * @param totalTime   Total time of the current song in milliseconds.
      */
     public void setTime(int currentTime, int totalTime) {
-        miniPlayerCurrentTime.setText(SecondsToString.currentTimeToString(currentTime / 1000, totalTime / 1000));
-        miniPlayerTotalTime.setText(SecondsToString.lengthToString(totalTime / 1000));
-        miniPlayerScrubber.setMaximum(totalTime);
+        if (totalTime != displayedTotalTime) {
+            miniPlayerTotalTime.setText(SecondsToString.lengthToString(totalTime / 1000));
+            miniPlayerScrubber.setMaximum(totalTime);
+            displayedTotalTime = totalTime;
+            displayedSecond = -1;
+        }
+        if (currentTime / 1000 != displayedSecond) {
+            miniPlayerCurrentTime.setText(SecondsToString.currentTimeToString(currentTime / 1000, totalTime / 1000));
+            displayedSecond = currentTime / 1000;
+        }
         miniPlayerScrubber.setValue(currentTime);
     }
 
@@ -425,6 +429,8 @@ public class PlayerWindow {
         miniPlayerTotalTime.setText("- - : - -");
         miniPlayerSongInfo.setText("");
         miniPlayerScrubber.setMaximum(0);
+        displayedSecond = -1;
+        displayedTotalTime = -1;
         setPlayPauseButtonIcon(BUTTON_ICON_PLAY);
         setEnabledPreviousButton(false);
         setEnabledNextButton(false);
@@ -476,6 +482,42 @@ public class PlayerWindow {
         }
     }
 
+    /**
+     * Opens a file chooser that accepts multiple MP3 files and folders, to be imported with {@link LibraryImport}.
+     *
+     * @return chosen files and folders or {@code null} if cancelled.
+     * @see LibraryImport
+     */
+    public File[] openImportChooser() {
+        CustomFileChooser fileChooser = new CustomFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fileChooser.setMultiSelectionEnabled(true);
+        int fileChooserReturnValue = fileChooser.showOpenDialog(this.window);
+
+        if (fileChooserReturnValue == JFileChooser.APPROVE_OPTION) {
+            return fileChooser.getSelectedFiles();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Shows the progress of an import on the "Add Song" button, which cancels the import while it is running.
+     * Should be called whenever the progress of the import changes.
+     *
+     * @param percent Progress of the import, from 0 to 100.
+     */
+    public void setImportProgress(int percent) {
+        addSongButton.setText("Cancel import (" + percent + "%)");
+    }
+
+    /**
+     * Restores the "Add Song" button. Should be called when an import finishes or is cancelled.
+     */
+    public void resetImportProgress() {
+        addSongButton.setText("Add song...");
+    }
+
     /**
      * Opens a file chooser and returns an array of multiple copies of a {@link Song} object
      * with information parsed from the file. Each object has its own {@link UUID}.
@@ -502,61 +544,7 @@ public class PlayerWindow {
     }
 
     private Song parseInfo(File file) {
-        String title = "";
-        String album = "";
-        String artist = "";
-        String year = "";
-        float msLength;
-        String strLength;
-        String filePath = file.getPath();
-        int fileSize = 0;
-        try {
-            fileSize = (int) Files.size(Path.of(filePath));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        int numFrames;
-        float msPerFrame;
-
-        // Try to get ID3 info
-        Mp3File mp3File = null;
-        try {
-            mp3File = new Mp3File(file);
-        } catch (IOException | UnsupportedTagException | InvalidDataException e) {
-            e.printStackTrace();
-        }
-        if (mp3File == null) return null;
-        if (mp3File.hasId3v1Tag()) {
-            ID3v1 id3 = mp3File.getId3v1Tag();
-            title = id3.getTitle();
-            album = id3.getAlbum();
-            artist = id3.getArtist();
-            year = id3.getYear();
-        } else if (mp3File.hasId3v2Tag()) {
-            ID3v2 id3 = mp3File.getId3v2Tag();
-            title = id3.getTitle();
-            album = id3.getAlbum();
-            artist = id3.getArtist();
-            year = id3.getYear();
-        }
-
-        numFrames = mp3File.getFrameCount();
-        msLength = mp3File.getLengthInMilliseconds();
-        msPerFrame = msLength / numFrames;
-
-        Duration duration = Duration.ofMillis((long) msLength);
-        long HH = duration.toHours();
-        long MM = duration.toMinutesPart();
-        long SS = duration.toSecondsPart();
-        strLength = String.format("%d:%02d:%02d", HH, MM, SS);
-
-        if (title == null || title.isBlank()) title = "Untitled";
-        if (album == null || album.isBlank()) album = "Untitled";
-        if (artist == null || artist.isBlank()) artist = "Unknown";
-        if (year == null || year.isBlank()) year = "Unknown";
-
-        String uuid = UUID.randomUUID().toString();
-        return new Song(uuid, title, album, artist, year, strLength, msLength, filePath, fileSize, numFrames, msPerFrame);
+        return SongParser.parse(file);
     }
 
     static final class CustomFileChooser extends JFileChooser {
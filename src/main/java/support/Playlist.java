@@ -1,36 +1,97 @@
 package support;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
 
 /**
- * Abstraction of a playlist. The data structure used to store the song is an {@link ArrayList}.
+ * Abstraction of a playlist. Songs are stored once, in the order they were added, with an index from
+ * {@link Song#getUuid()} to their slot. Removed songs leave an empty slot behind (compacted once they are
+ * the majority), and a {@link RankTree} over the slots turns a slot into a position in the playlist and
+ * back in O(log n), so removing, finding and getting songs never shifts or scans the whole list.<br>
+ * When shuffled, the playlist is read through a permutation of the slots, generated lazily with Fisher-Yates:
+ * only the positions that were read so far are fixed, and each read past them draws the next ones at random
+ * from the slots left. Shuffling is thus O(1) regardless of the size of the playlist, songs added while
+ * shuffled are drawn among the slots left, and undoing the shuffle just drops the permutation.
  * It has an index to point at a specified position, representing the song that is currently playing,
  * flags for loop and shuffle, methods to toggle shuffle modes, return previous and next song in the
- * playlist and more.
+ * playlist and more.<br>
+ * The playlist is guarded by a {@link StampedLock}. Changes take the write lock, and so do reads that need to
+ * generate more of the shuffled order. Every other read is optimistic: it doesn't block, and it is only
+ * repeated under the lock if a change happened meanwhile, so the playback thread doesn't wait for the UI
+ * to edit the playlist. Wait and hold times of the write lock are recorded in {@link #getLockStats()}.
  *
- * @see ArrayList
+ * @see RankTree
+ * @see StampedLock
  */
 public class Playlist {
 
     public final int SONG_NOT_FOUND = 0;
     public final int SONG_REMOVED = 1;
     public final int CURRENT_SONG_REMOVED = 2;
+    private static final int MIN_SLOTS_TO_COMPACT = 64;
+
+    private final StampedLock lock = new StampedLock();
+    private final LockStats lockStats = new LockStats();
+    private final LongAdder optimisticRetries = new LongAdder();
+    private long writeAcquiredNanos;    // written only by the writer
+
     private int currentIndex;
     private boolean looping;
     private boolean shuffled;
-    private ArrayList<Song> list = new ArrayList<>();
-    private ArrayList<Song> copy = new ArrayList<>();
+    private final Random random = new Random();
+
+    // Songs in the order they were added. A removed song leaves a null slot.
+    private Song[] slots = new Song[16];
+    private int slotCount;
+    private int size;
+    private final HashMap<String, Integer> slotByUuid = new HashMap<>();
+    private RankTree liveSlots = new RankTree(16);
+
+    // Shuffled order: slot at each position and position of each slot, stored plus one so that 0 (the
+    // value of positions not swapped yet) means the identity. Only positions before "generated" are final.
+    private int[] shuffledOrder;
+    private int[] shuffledPosition;
+    private RankTree liveShuffled;
+    private int generated;
+    private int generatedLive;
 
     /**
      * Appends the specified song to the end of the list.
      *
      * @param song song to be appended to this list.
+     * @throws IllegalArgumentException if there is already a song with the same UUID in this list.
      */
     public void add(Song song) {
-        if (shuffled) copy.add(song);
-        list.add(song);
+        long stamp = writeLock();
+        try {
+            addUnlocked(song);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private void addUnlocked(Song song) {
+        if (slotByUuid.containsKey(song.getUuid())) throw new IllegalArgumentException("duplicate UUID: " + song.getUuid());
+        if (slotCount == slots.length) slots = Arrays.copyOf(slots, slots.length * 2);
+        int slot = slotCount++;
+        slots[slot] = song;
+        slotByUuid.put(song.getUuid(), slot);
+        liveSlots.append(true);
+        size++;
+
+        if (shuffled) {
+            // the new slot starts at the position with its own number, among the ones not generated yet
+            if (slot == shuffledOrder.length) {
+                shuffledOrder = Arrays.copyOf(shuffledOrder, slots.length);
+                shuffledPosition = Arrays.copyOf(shuffledPosition, slots.length);
+            }
+            liveShuffled.append(true);
+        }
     }
 
     /**
@@ -43,29 +104,127 @@ public class Playlist {
      *         2 - if song is removed and its index equals currentIndex.
      */
     public int remove(int index) {
-        if (shuffled) {
-            String uuid = list.get(index).getUuid();
-            copy = copy.stream()
-                    .filter(song -> !song.getUuid().equals(uuid))
-                    .collect(Collectors.toCollection(ArrayList::new));
+        long stamp = writeLock();
+        try {
+            return removeUnlocked(index);
+        } finally {
+            unlockWrite(stamp);
         }
-        if (index >= 0 && index < list.size()) {
-            list.remove(index);
-            if (index == currentIndex) return CURRENT_SONG_REMOVED;
-            return SONG_REMOVED;
+    }
+
+    private int removeUnlocked(int index) {
+        if (index < 0 || index >= size) return SONG_NOT_FOUND;
+
+        int slot = slotAt(index);
+        slotByUuid.remove(slots[slot].getUuid());
+        removeSlot(slot);
+        int result = index == currentIndex ? CURRENT_SONG_REMOVED : SONG_REMOVED;
+        if (index < currentIndex) currentIndex--;
+        if (slotCount >= MIN_SLOTS_TO_COMPACT && size < slotCount / 2) compact();
+        return result;
+    }
+
+    /**
+     * Removes the song with the specified UUID.
+     *
+     * @param uuid UUID of the song to be removed.
+     * @return the same as {@link #remove(int)}.
+     */
+    public int remove(String uuid) {
+        long stamp = writeLock();
+        try {
+            int index = findIndexUnlocked(uuid);
+            return index < 0 ? SONG_NOT_FOUND : removeUnlocked(index);
+        } finally {
+            unlockWrite(stamp);
         }
-        return SONG_NOT_FOUND;
     }
 
     /**
-     * Returns the song at the specified position in this list.
+     * Returns the song at the specified position in this list. The song is not copied, see {@link Song}.
      *
      * @param index index of the song to be returned.
      * @return the element at the specified position in this list, or null if index is out of bounds.
      */
     public Song get(int index) {
-        if (index >= 0 && index < list.size()) return new Song(list.get(index));
-        return null;
+        return read(index, false);
+    }
+
+    /**
+     * @return the song at the current index, or null if the playlist is empty.
+     */
+    public Song getCurrentSong() {
+        return read(-1, true);
+    }
+
+    private Song read(int requestedIndex, boolean current) {
+        long stamp = lock.tryOptimisticRead();
+        try {
+            int index = current ? currentIndex : requestedIndex;
+            if (index < 0 || index >= size) {
+                if (lock.validate(stamp)) return null;
+            } else {
+                int slot = generatedSlotAt(index);
+                if (slot >= 0) {
+                    Song song = slots[slot];
+                    if (lock.validate(stamp)) return song;
+                }
+            }
+        } catch (RuntimeException ignored) {
+            // read in the middle of a change, e.g. of the arrays being replaced
+        }
+
+        // with the write lock, since the position may not have been generated yet
+        if (stamp != 0) optimisticRetries.increment();
+        stamp = writeLock();
+        try {
+            int index = current ? currentIndex : requestedIndex;
+            return index >= 0 && index < size ? slots[slotAt(index)] : null;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the song after the current one, as in {@link #getNextIndex()}, if there is one.
+     *
+     * @return the next song, or null if there is no song after the current one.
+     */
+    public Song getNextSong() {
+        long stamp = writeLock();
+        try {
+            return hasNextUnlocked() ? slots[slotAt(getNextIndexUnlocked())] : null;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Moves the current index to the next song, taking into account if the playlist is set to loop or not.
+     *
+     * @return False if there is no song after the current one, in which case the index is not changed.
+     */
+    public boolean moveToNext() {
+        long stamp = writeLock();
+        try {
+            if (!hasNextUnlocked()) return false;
+            currentIndex = getNextIndexUnlocked();
+            return true;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Moves the current index to the previous song, taking into account if the playlist is set to loop or not.
+     */
+    public void moveToPrevious() {
+        long stamp = writeLock();
+        try {
+            currentIndex = getPreviousIndexUnlocked();
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     /**
@@ -75,10 +234,20 @@ public class Playlist {
      * @return index of the song with the specified UUID, or -1 if there is no song with the specified UUID.
      */
     public int findIndex(String uuid) {
-        Song temp = list.stream()
-                .filter(song -> song.getUuid().equals(uuid))
-                .collect(Collectors.toCollection(ArrayList::new)).get(0);
-        return list.indexOf(temp);
+        long stamp = writeLock();
+        try {
+            return findIndexUnlocked(uuid);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private int findIndexUnlocked(String uuid) {
+        Integer slot = slotByUuid.get(uuid);
+        if (slot == null) return -1;
+        if (!shuffled) return liveSlots.rank(slot);
+        while (positionOf(slot) >= generated) generateNext(-1);
+        return liveShuffled.rank(positionOf(slot));
     }
 
     /**
@@ -87,7 +256,24 @@ public class Playlist {
      * @return the number of songs in this playlist.
      */
     public int size() {
-        return list.size();
+        return readInt(() -> size);
+    }
+
+    /**
+     * Returns the songs of this playlist in playing order. Only the references are copied under the lock, so
+     * callers can format them without holding up the engine.
+     *
+     * @return a new array with the songs of this playlist.
+     */
+    public Song[] toArray() {
+        long stamp = writeLock();
+        try {
+            Song[] songs = new Song[size];
+            for (int i = 0; i < size; i++) songs[i] = slots[slotAt(i)];
+            return songs;
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     /**
@@ -105,9 +291,17 @@ public class Playlist {
      * The caller is thus free to modify the returned array.
      *
      * @return an array containing information about each song in this playlist in proper sequence.
+     * @see QueueTableModel
      */
     public String[][] getDisplayInfo() {
-        return list.stream().map(Song::getDisplayInfo).toArray(String[][]::new);
+        long stamp = writeLock();
+        try {
+            String[][] info = new String[size][];
+            for (int i = 0; i < size; i++) info[i] = slots[slotAt(i)].getDisplayInfo();
+            return info;
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     /**
@@ -117,7 +311,7 @@ public class Playlist {
      * @return the integer defined as the current index of the playlist.
      */
     public int getCurrentIndex() {
-        return currentIndex;
+        return readInt(() -> currentIndex);
     }
 
     /**
@@ -127,7 +321,12 @@ public class Playlist {
      * @param newIndex new value of the integer defined as the current index of the playlist.
      */
     public void setCurrentIndex(int newIndex) {
-        if (newIndex >= 0 && newIndex < list.size()) currentIndex = newIndex;
+        long stamp = writeLock();
+        try {
+            if (newIndex >= 0 && newIndex < size) currentIndex = newIndex;
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     /**
@@ -138,8 +337,12 @@ public class Playlist {
      * @return the integer defined as the index before the current index of the playlist.
      */
     public int getPreviousIndex() {
+        return readInt(this::getPreviousIndexUnlocked);
+    }
+
+    private int getPreviousIndexUnlocked() {
         if (currentIndex > 0) return currentIndex - 1;
-        else return looping ? list.size() - 1 : 0;
+        else return looping ? size - 1 : 0;
     }
 
     /**
@@ -150,8 +353,12 @@ public class Playlist {
      * @return the integer defined as the index after the current index of the playlist.
      */
     public int getNextIndex() {
-        if (currentIndex < list.size() - 1) return currentIndex + 1;
-        else return looping ? 0 : list.size() - 1;
+        return readInt(this::getNextIndexUnlocked);
+    }
+
+    private int getNextIndexUnlocked() {
+        if (currentIndex < size - 1) return currentIndex + 1;
+        else return looping ? 0 : size - 1;
     }
 
     /**
@@ -159,21 +366,26 @@ public class Playlist {
      * @return true - if playlist is set to loop.
      */
     public boolean isLooping() {
-        return looping;
+        return readBoolean(() -> looping);
     }
 
     /**
      * Toggle looping flag of playlist between true and false.
      */
     public void toggleLooping() {
-        looping = !looping;
+        long stamp = writeLock();
+        try {
+            looping = !looping;
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     /**
      * @return True if playlist was set to shuffle.
      */
     public boolean isShuffled() {
-        return shuffled;
+        return readBoolean(() -> shuffled);
     }
 
     /**
@@ -182,43 +394,221 @@ public class Playlist {
      *                    Has no effect when undoing shuffle.
      */
     public void toggleShuffle(boolean keepCurrent) {
+        long stamp = writeLock();
+        try {
+            toggleShuffleUnlocked(keepCurrent);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private void toggleShuffleUnlocked(boolean keepCurrent) {
+        int currentSlot = currentIndex < size ? slotAt(currentIndex) : -1;
         if (shuffled) {
-            currentIndex = copy.indexOf(list.get(currentIndex));
-            list.clear();
-            list.addAll(copy);
-        } else {
-            copy.clear();
-            copy.addAll(list);
-            if (keepCurrent) {
-                list.remove(currentIndex);
-                Collections.shuffle(list);
-                list.add(0, copy.get(currentIndex));
-            } else {
-                Collections.shuffle(list);
-            }
-            currentIndex = 0;
+            shuffledOrder = null;
+            shuffledPosition = null;
+            liveShuffled = null;
+            shuffled = false;
+            if (currentSlot >= 0) currentIndex = liveSlots.rank(currentSlot);
+            return;
         }
-        shuffled = !shuffled;
+
+        // identity permutation: nothing is drawn until it is read
+        shuffledOrder = new int[slots.length];
+        shuffledPosition = new int[slots.length];
+        liveShuffled = liveSlots.copy();
+        generated = 0;
+        generatedLive = 0;
+        shuffled = true;
+        if (keepCurrent && currentSlot >= 0) generateNext(currentSlot);
+        currentIndex = 0;
     }
 
     /**
      * @return True if playlist is empty.
      */
     public boolean isEmpty() {
-        return list.isEmpty();
+        return size() == 0;
     }
 
     /**
      * @return True if there is a song after currentIndex, taking into account if playlist is set to loop.
      */
     public boolean hasNext() {
-        return !isEmpty() && (looping || currentIndex < size() - 1);
+        return readBoolean(this::hasNextUnlocked);
+    }
+
+    private boolean hasNextUnlocked() {
+        return size > 0 && (looping || currentIndex < size - 1);
     }
 
     /**
      * @return True if there is a song before currentIndex, taking into account if playlist is set to loop.
      */
     public boolean hasPrevious() {
-        return !isEmpty() && (looping || currentIndex > 0);
+        return readBoolean(() -> size > 0 && (looping || currentIndex > 0));
+    }
+
+    /**
+     * @return the wait and hold times of the write lock.
+     */
+    public LockStats getLockStats() {
+        return lockStats;
+    }
+
+    /**
+     * @return the number of optimistic reads that had to be repeated under the lock.
+     */
+    public long getOptimisticRetries() {
+        return optimisticRetries.sum();
+    }
+
+    private long writeLock() {
+        long start = System.nanoTime();
+        long stamp = lock.tryWriteLock();
+        boolean contended = stamp == 0;
+        if (contended) stamp = lock.writeLock();
+        writeAcquiredNanos = System.nanoTime();
+        lockStats.recordAcquisition(writeAcquiredNanos - start, contended);
+        return stamp;
+    }
+
+    private void unlockWrite(long stamp) {
+        lockStats.recordRelease(System.nanoTime() - writeAcquiredNanos);
+        lock.unlockWrite(stamp);
+    }
+
+    private int readInt(IntSupplier read) {
+        long stamp = lock.tryOptimisticRead();
+        int value = read.getAsInt();
+        if (lock.validate(stamp)) return value;
+
+        optimisticRetries.increment();
+        stamp = lock.readLock();
+        try {
+            return read.getAsInt();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean readBoolean(BooleanSupplier read) {
+        long stamp = lock.tryOptimisticRead();
+        boolean value = read.getAsBoolean();
+        if (lock.validate(stamp)) return value;
+
+        optimisticRetries.increment();
+        stamp = lock.readLock();
+        try {
+            return read.getAsBoolean();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int slotAt(int index) {
+        if (!shuffled) return liveSlots.select(index);
+        while (generatedLive <= index) generateNext(-1);
+        return slotOf(liveShuffled.select(index));
+    }
+
+    /**
+     * {@link #slotAt(int)} without generating the shuffled order, for reads without the write lock: it only
+     * reads the fields, so a concurrent change can make it return garbage or throw, but never corrupts them.
+     *
+     * @return the slot of the song at the index, or -1 if its position in the shuffled order isn't generated yet.
+     */
+    private int generatedSlotAt(int index) {
+        if (!shuffled) return liveSlots.select(index);
+        return index < generatedLive ? slotOf(liveShuffled.select(index)) : -1;
+    }
+
+    private int slotOf(int position) {
+        int slot = shuffledOrder[position];
+        return slot == 0 ? position : slot - 1;
+    }
+
+    private int positionOf(int slot) {
+        int position = shuffledPosition[slot];
+        return position == 0 ? slot : position - 1;
+    }
+
+    /**
+     * Fixes the next position of the shuffled order with one step of Fisher-Yates.
+     *
+     * @param chosenSlot Slot to put at the position, or -1 to draw one of the slots left at random.
+     */
+    private void generateNext(int chosenSlot) {
+        int position = generated;
+        int other = chosenSlot >= 0 ? positionOf(chosenSlot) : position + random.nextInt(slotCount - position);
+        int slot = slotOf(other);
+        int displaced = slotOf(position);
+
+        shuffledOrder[position] = slot + 1;
+        shuffledPosition[slot] = position + 1;
+        shuffledOrder[other] = displaced + 1;
+        shuffledPosition[displaced] = other + 1;
+        if (slots[slot] == null && slots[displaced] != null) {
+            liveShuffled.remove(position);
+            liveShuffled.restore(other);
+        } else if (slots[slot] != null && slots[displaced] == null) {
+            liveShuffled.remove(other);
+            liveShuffled.restore(position);
+        }
+
+        generated++;
+        if (slots[slot] != null) generatedLive++;
+    }
+
+    private void removeSlot(int slot) {
+        if (shuffled) {
+            int position = positionOf(slot);
+            liveShuffled.remove(position);
+            if (position < generated) generatedLive--;
+        }
+        slots[slot] = null;
+        liveSlots.remove(slot);
+        size--;
+    }
+
+    /**
+     * Drops the empty slots left by removed songs, keeping both orders.
+     */
+    private void compact() {
+        if (size == slotCount) return;
+
+        int[] newSlot = new int[slotCount];
+        Song[] compacted = new Song[Math.max(16, size)];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            Song song = slots[slot];
+            if (song == null) continue;
+            newSlot[slot] = count;
+            compacted[count] = song;
+            slotByUuid.put(song.getUuid(), count);
+            count++;
+        }
+
+        if (shuffled) {
+            // the generated positions keep their order, and the ones left only need to keep their slots
+            int[] order = new int[compacted.length];
+            int[] position = new int[compacted.length];
+            int positions = 0;
+            for (int i = 0; i < slotCount; i++) {
+                int slot = slotOf(i);
+                if (slots[slot] == null) continue;
+                order[positions] = newSlot[slot] + 1;
+                position[newSlot[slot]] = positions + 1;
+                positions++;
+            }
+            shuffledOrder = order;
+            shuffledPosition = position;
+            liveShuffled = RankTree.allLive(size);
+            generated = generatedLive;
+        }
+
+        slots = compacted;
+        slotCount = size;
+        liveSlots = RankTree.allLive(size);
     }
 }
@@ -0,0 +1,271 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders songs to 16-bit PCM WAV files as fast as the CPU allows, e.g. to pre-render a playlist for
+ * broadcast. Each song is decoded with its own {@link Bitstream} and {@link Decoder} by one worker of a
+ * {@link ForkJoinPool}, so songs are decoded in parallel, and written through a {@link FileChannel}.<br>
+ * Progress can be read at any time while the export runs, and {@link #cancel()} stops every worker at its
+ * next frame and deletes the files that weren't finished. Throughput is reported as decoded audio seconds
+ * per wall-clock second, which should grow with the number of workers.
+ */
+public class QueueExport {
+
+    /**
+     * Outcome of an export.
+     *
+     * @param files        WAV files written, in the order of the songs.
+     * @param failures     Songs that couldn't be exported and why.
+     * @param audioSeconds Audio decoded, in seconds, summed over every song.
+     * @param wallSeconds  Time the export took, in seconds.
+     */
+    public record Result(List<Path> files, Map<Song, Exception> failures, double audioSeconds, double wallSeconds) {
+        /**
+         * @return audio seconds decoded per wall-clock second.
+         */
+        public double audioSecondsPerSecond() {
+            return wallSeconds == 0 ? 0 : audioSeconds / wallSeconds;
+        }
+    }
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final List<Song> songs;
+    private final Path directory;
+    private final ForkJoinPool pool;
+    private final long totalFrames;
+    private final LongAdder framesDecoded = new LongAdder();
+    private final LongAdder audioMicros = new LongAdder();
+    private final AtomicInteger songsDone = new AtomicInteger();
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Prepares an export with one worker per core, or as many as the "player.exportThreads" system property says.
+     *
+     * @param songs     Songs to be exported, in order.
+     * @param directory Directory where the WAV files are written. Created if it doesn't exist.
+     */
+    public QueueExport(List<Song> songs, Path directory) {
+        this(songs, directory, Integer.getInteger("player.exportThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param songs       Songs to be exported, in order.
+     * @param directory   Directory where the WAV files are written. Created if it doesn't exist.
+     * @param parallelism Number of songs decoded at the same time.
+     */
+    public QueueExport(List<Song> songs, Path directory, int parallelism) {
+        this.songs = List.copyOf(songs);
+        this.directory = directory;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        long frames = 0;
+        for (Song song : this.songs) frames += song.getNumFrames();
+        this.totalFrames = frames;
+    }
+
+    /**
+     * Starts exporting in the background. Can only be called once.
+     *
+     * @return a future completed with the {@link Result} once every song was exported or failed, or cancelled
+     * if {@link #cancel()} was called.
+     */
+    public CompletableFuture<Result> start() {
+        if (startNanos != 0) throw new IllegalStateException("export already started");
+        startNanos = System.nanoTime();
+        pool.execute(() -> {
+            try {
+                Files.createDirectories(directory);
+                // each task records its own failure, so join never throws
+                Exception[] errors = new Exception[songs.size()];
+                List<ForkJoinTask<Path>> tasks = new ArrayList<>(songs.size());
+                for (int i = 0; i < songs.size(); i++) {
+                    int index = i;
+                    tasks.add(ForkJoinTask.adapt(() -> {
+                        try {
+                            return exportSong(index + 1, songs.get(index));
+                        } catch (Exception ex) {
+                            errors[index] = ex;
+                            return null;
+                        }
+                    }).fork());
+                }
+
+                List<Path> files = new ArrayList<>();
+                Map<Song, Exception> failures = new LinkedHashMap<>();
+                for (int i = 0; i < tasks.size(); i++) {
+                    Path file = tasks.get(i).join();
+                    if (file != null) files.add(file);
+                    else failures.put(songs.get(i), errors[i]);
+                }
+                endNanos = System.nanoTime();
+
+                if (cancelled) result.cancel(false);
+                else result.complete(new Result(Collections.unmodifiableList(files), Collections.unmodifiableMap(failures),
+                        audioMicros.sum() / 1e6, (endNanos - startNanos) / 1e9));
+            } catch (IOException | RuntimeException ex) {
+                endNanos = System.nanoTime();
+                result.completeExceptionally(ex);
+            } finally {
+                pool.shutdown();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stops the export. Workers stop at their next frame and the files they were writing are deleted.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return the future returned by {@link #start()}.
+     */
+    public CompletableFuture<Result> getResult() {
+        return result;
+    }
+
+    /**
+     * @return true if {@link #cancel()} was called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the fraction of the frames of every song decoded so far, from 0 to 1.
+     */
+    public double getProgress() {
+        if (result.isDone()) return 1;
+        return totalFrames == 0 ? 0 : Math.min(1, (double) framesDecoded.sum() / totalFrames);
+    }
+
+    /**
+     * @return the number of songs exported or failed so far.
+     */
+    public int getSongsDone() {
+        return songsDone.get();
+    }
+
+    /**
+     * @return the number of songs to be exported.
+     */
+    public int getSongCount() {
+        return songs.size();
+    }
+
+    /**
+     * @return audio seconds decoded per wall-clock second, up to now or until the export finished.
+     */
+    public double getAudioSecondsPerSecond() {
+        long start = startNanos;
+        if (start == 0) return 0;
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return end == start ? 0 : audioMicros.sum() / 1e6 / ((end - start) / 1e9);
+    }
+
+    /**
+     * Decodes a whole song into a WAV file. The format of the file is the one of the first frame.
+     *
+     * @param number Position of the song in the export, used in the file name.
+     * @param song   Song to be exported.
+     * @return the written file.
+     */
+    private Path exportSong(int number, Song song) throws IOException, JavaLayerException {
+        Path target = directory.resolve(fileName(number, song));
+        Bitstream bitstream = null;
+        FileChannel channel = null;
+        boolean finished = false;
+        try {
+            bitstream = new Bitstream(song.getInputStream(0));
+            Decoder decoder = new Decoder();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            int frequency = 0;
+            int channels = 0;
+            long dataBytes = 0;
+            Header h;
+            while ((h = bitstream.readFrame()) != null) {
+                if (cancelled) throw new CancellationException("export cancelled");
+                SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+                bitstream.closeFrame();
+
+                if (channel == null) {
+                    frequency = output.getSampleFrequency();
+                    channels = output.getChannelCount();
+                    channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE);
+                    channel.position(WavFileAudioDevice.HEADER_BYTES);
+                }
+
+                int length = output.getBufferLength();
+                if (buffer.remaining() < length * Short.BYTES) drain(buffer, channel);
+                buffer.asShortBuffer().put(output.getBuffer(), 0, length);
+                buffer.position(buffer.position() + length * Short.BYTES);
+                dataBytes += (long) length * Short.BYTES;
+                framesDecoded.increment();
+                audioMicros.add(length * 1_000_000L / ((long) frequency * channels));
+            }
+            if (channel == null) throw new IOException("no audio frames in " + song.getFilePath());
+
+            drain(buffer, channel);
+            channel.write(WavFileAudioDevice.header(frequency, channels, dataBytes), 0);
+            finished = true;
+            return target;
+        } finally {
+            if (bitstream != null) closeQuietly(bitstream);
+            if (channel != null) channel.close();
+            if (!finished) Files.deleteIfExists(target);
+            songsDone.incrementAndGet();
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @return a file name like "003 - Artist - Title.wav", without characters file systems reject.
+     */
+    private static String fileName(int number, Song song) {
+        String name = String.format("%03d - %s - %s", number, song.getArtist(), song.getTitle());
+        return name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_") + ".wav";
+    }
+
+    private static void closeQuietly(Bitstream stream) {
+        try {
+            stream.close();
+        } catch (BitstreamException ignored) {
+        }
+    }
+}
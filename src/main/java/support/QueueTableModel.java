@@ -0,0 +1,119 @@
+package support;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model backed directly by the reproduction queue. Rows are read from the {@link Song} objects on demand,
+ * so the queue is never copied to be displayed, and changes are reported with row-level events.<br>
+ * The columns are organized as follows:<br>
+ * [0] - Title<br>
+ * [1] - Album<br>
+ * [2] - Artist<br>
+ * [3] - Year<br>
+ * [4] - Time (formatted as 00:00)<br>
+ * [5] - UUID<br>
+ * All methods must be called on the Event Dispatch Thread, after the queue was changed. The queue itself is
+ * changed by other threads (e.g. removals by the engine thread), so the model keeps its own row count, which
+ * only changes when the model is told about a change. Until then, rows are read from the queue as it is, and
+ * rows past its end are blank.
+ *
+ * @see Playlist
+ * @see Song#getDisplayInfo()
+ */
+public class QueueTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMN_TITLES = new String[]{"Title", "Album", "Artist", "Year", "Length", "Path"};
+
+    private final transient Playlist queue;
+    private int rowCount;
+
+    /**
+     * @param queue Playlist displayed by the model, in its current order.
+     */
+    public QueueTableModel(Playlist queue) {
+        this.queue = queue;
+        this.rowCount = queue.size();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_TITLES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_TITLES[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        // the queue may have shrunk since the size was checked
+        Song song = queue.get(rowIndex);
+        if (song == null) return "";
+        return switch (columnIndex) {
+            case 0 -> song.getTitle();
+            case 1 -> song.getAlbum();
+            case 2 -> song.getArtist();
+            case 3 -> song.getYear();
+            case 4 -> song.getStrLength();
+            default -> song.getUuid();
+        };
+    }
+
+    @Override
+    public boolean isCellEditable(int rowIndex, int columnIndex) {
+        return false;
+    }
+
+    /**
+     * Should be called after songs are appended or inserted in the queue.
+     *
+     * @param firstRow Index of the first song added.
+     * @param lastRow  Index of the last song added.
+     */
+    public void songsAdded(int firstRow, int lastRow) {
+        if (firstRow > lastRow) return;
+        FlightEvents.QueueTableUpdate event = new FlightEvents.QueueTableUpdate();
+        event.begin();
+        rowCount += lastRow - firstRow + 1;
+        fireTableRowsInserted(firstRow, lastRow);
+        commit(event, "added", lastRow - firstRow + 1);
+    }
+
+    /**
+     * Should be called after a song is removed from the queue.
+     *
+     * @param row Index the song had before it was removed.
+     */
+    public void songRemoved(int row) {
+        FlightEvents.QueueTableUpdate event = new FlightEvents.QueueTableUpdate();
+        event.begin();
+        rowCount--;
+        fireTableRowsDeleted(row, row);
+        commit(event, "removed", 1);
+    }
+
+    /**
+     * Should be called after the order of the whole queue changes, e.g. when shuffling. The row count is kept:
+     * reordering doesn't change it, and a removal made before the reorder is still reported by
+     * {@link #songRemoved(int)}.
+     */
+    public void queueReordered() {
+        FlightEvents.QueueTableUpdate event = new FlightEvents.QueueTableUpdate();
+        event.begin();
+        fireTableDataChanged();
+        commit(event, "reordered", getRowCount());
+    }
+
+    private static void commit(FlightEvents.QueueTableUpdate event, String change, int rows) {
+        if (!event.shouldCommit()) return;
+        event.change = change;
+        event.rows = rows;
+        event.commit();
+    }
+}
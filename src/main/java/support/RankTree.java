@@ -0,0 +1,119 @@
+package support;
+
+import java.util.Arrays;
+
+/**
+ * Fenwick tree that counts the live positions of a sequence where positions are only appended or marked as
+ * removed. Finding the rank of a position (how many live positions come before it) and the position of the
+ * k-th live one take O(log n), so a list with removals can be indexed without shifting its elements.
+ */
+final class RankTree {
+    private int[] tree;
+    private int size;
+
+    /**
+     * @param capacity Initial number of positions.
+     */
+    RankTree(int capacity) {
+        tree = new int[Math.max(1, capacity) + 1];
+    }
+
+    /**
+     * Builds a tree with every position live, in O(n).
+     *
+     * @param size Number of positions.
+     * @return the built {@link RankTree}.
+     */
+    static RankTree allLive(int size) {
+        RankTree rankTree = new RankTree(size);
+        int[] tree = rankTree.tree;
+        for (int i = 1; i <= size; i++) {
+            tree[i]++;
+            int parent = i + (i & -i);
+            if (parent <= size) tree[parent] += tree[i];
+        }
+        rankTree.size = size;
+        return rankTree;
+    }
+
+    /**
+     * @return the number of positions, live or removed.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Appends a position at the end of the sequence.
+     *
+     * @param live True if the new position is live.
+     */
+    void append(boolean live) {
+        if (size + 1 == tree.length) tree = Arrays.copyOf(tree, tree.length * 2);
+        int index = ++size;
+        // the node covers (index - lowbit, index], so it holds the new value plus the live count of the rest of the range
+        tree[index] = (live ? 1 : 0) + prefix(index - 1) - prefix(index - (index & -index));
+    }
+
+    /**
+     * @return a copy of this tree, which can be changed independently.
+     */
+    RankTree copy() {
+        RankTree copy = new RankTree(0);
+        copy.tree = tree.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Marks a live position as removed.
+     *
+     * @param position Position to remove.
+     */
+    void remove(int position) {
+        add(position, -1);
+    }
+
+    /**
+     * Marks a removed position as live again.
+     *
+     * @param position Position to restore.
+     */
+    void restore(int position) {
+        add(position, 1);
+    }
+
+    /**
+     * @param position Position in the sequence.
+     * @return the number of live positions before the specified one.
+     */
+    int rank(int position) {
+        return prefix(position);
+    }
+
+    /**
+     * @param k Index among the live positions, from 0.
+     * @return the position of the k-th live position.
+     */
+    int select(int k) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= size && tree[next] <= k) {
+                position = next;
+                k -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    private void add(int position, int delta) {
+        for (int i = position + 1; i <= size; i += i & -i) tree[i] += delta;
+    }
+
+    private int prefix(int end) {
+        int sum = 0;
+        for (int i = end; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+}
@@ -0,0 +1,160 @@
+package support;
+
+import java.util.concurrent.locks.Condition;
+
+/**
+ * Single long-lived thread that applies seek requests with latest-wins semantics: while a seek is running,
+ * newer requests overwrite each other and only the newest one is applied once the worker is free.
+ * Dragging the scrubber therefore never queues more than one pending seek, and the final position is always
+ * the last one requested.<br>
+ * The worker runs as a task of a {@link TaskRuntime.Scope}, which is cancelled with it and receives the errors
+ * of failed seeks.
+ */
+public class SeekWorker {
+
+    /**
+     * Moves playback to the specified frame. Called only from the worker thread.
+     */
+    @FunctionalInterface
+    public interface SeekAction {
+        void seek(int frame) throws Exception;
+    }
+
+    private static final int NO_TARGET = -1;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // the worker waits on the condition while idle, so only the wait times of the stats are meaningful
+    private final TimedLock lock = new TimedLock();
+    private final Condition requested = lock.newCondition();
+    private final SeekAction action;
+    private final TaskRuntime.Scope scope;
+    private final Thread thread;
+
+    private int target = NO_TARGET;
+    private long requests;
+    private long executed;
+    private long currentSecond;
+    private long requestsInCurrentSecond;
+    private long requestsInLastSecond;
+
+    /**
+     * Constructs a {@link SeekWorker} that runs as a task of the specified scope, so it is cancelled with it.
+     *
+     * @param action Seek to be applied for each target that is not superseded.
+     * @param scope  Scope that runs the worker.
+     */
+    public SeekWorker(SeekAction action, TaskRuntime.Scope scope) {
+        this.action = action;
+        this.scope = scope;
+        this.thread = scope.submit("seek-worker", this::run);
+    }
+
+    /**
+     * Requests a seek to the specified frame, replacing any request that hasn't started yet.
+     *
+     * @param frame Target frame, must not be negative.
+     */
+    public void submit(int frame) {
+        if (frame < 0) throw new IllegalArgumentException("frame must not be negative: " + frame);
+        lock.lock();
+        try {
+            long second = System.nanoTime() / NANOS_PER_SECOND;
+            if (second != currentSecond) {
+                requestsInLastSecond = second == currentSecond + 1 ? requestsInCurrentSecond : 0;
+                requestsInCurrentSecond = 0;
+                currentSecond = second;
+            }
+            requestsInCurrentSecond++;
+            requests++;
+            target = frame;
+            requested.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the worker thread. Pending requests are dropped.
+     */
+    public void shutdown() {
+        thread.interrupt();
+    }
+
+    /**
+     * @return how often requests and the worker waited for each other. Hold times include the idle worker
+     * waiting for requests.
+     */
+    public LockStats getLockStats() {
+        return lock.getStats();
+    }
+
+    /**
+     * @return the total number of seeks requested.
+     */
+    public long getRequestCount() {
+        lock.lock();
+        try {
+            return requests;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of seeks requested during the last full second.
+     */
+    public long getRequestsPerSecond() {
+        lock.lock();
+        try {
+            long second = System.nanoTime() / NANOS_PER_SECOND;
+            if (second == currentSecond) return requestsInLastSecond;
+            return second == currentSecond + 1 ? requestsInCurrentSecond : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of seeks actually applied. The difference to {@link #getRequestCount()} is the number
+     * of requests superseded by a newer one.
+     */
+    public long getExecutedCount() {
+        lock.lock();
+        try {
+            return executed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            int frame;
+            lock.lock();
+            try {
+                while (target == NO_TARGET) requested.await();
+                frame = target;
+                target = NO_TARGET;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                action.seek(frame);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                scope.reportError("seek-worker", e);
+            }
+
+            lock.lock();
+            try {
+                executed++;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -3,17 +3,21 @@ package support;
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.UUID;
 
 /**
  * An abstraction of an MP3 file, with methods that return important display information
  * such as title, album, artist, and information to assist playing the file
  * such as length, number of frames, and other. Also contains a method that returns a
- * {@link java.io.BufferedInputStream} of the file.
+ * {@link java.io.BufferedInputStream} of the file.<br>
+ * Songs are immutable (the frame index is only cached), so the same instance
+ * is shared by the playlist, the player and the UI instead of being copied.
  *
  * @see BufferedInputStream
  */
-public class Song {
+public final class Song {
     private final String uuid;
     private final String title;
     private final String album;
@@ -25,10 +29,10 @@ public class Song {
     private final int fileSize;
     private final int numFrames;
     private final float msPerFrame;
+    private volatile FrameIndex frameIndex;
 
     /**
      * Creates a deep copy of the specified {@link Song}.
-     * This method is NOT THREAD SAFE!
      *
      * @param song {@link Song} to copy.
      */
@@ -44,6 +48,7 @@ public class Song {
         fileSize = song.getFileSize();
         numFrames = song.getNumFrames();
         msPerFrame = song.getMsPerFrame();
+        frameIndex = song.frameIndex;
     }
 
     /**
@@ -86,7 +91,6 @@ public class Song {
      * [3] - Year<br>
      * [4] - Time (formatted as 00:00)<br>
      * [5] - {@link UUID}<br>
-     * This method is NOT THREAD SAFE!
      *
      * @return Returns an array with important information to be displayed about a song.
      * @see UUID
@@ -156,4 +160,45 @@ public class Song {
     public BufferedInputStream getBufferedInputStream() throws FileNotFoundException {
         return new BufferedInputStream(new FileInputStream(this.getFilePath()));
     }
+
+    /**
+     * Returns an {@link InputStream} of the MP3 file starting at the specified byte offset. Depending on
+     * {@link SongInput#getMode()}, the bytes are streamed from disk or read from a memory-mapped view of the file.
+     *
+     * @param offset Byte offset in the file, e.g. from {@link FrameIndex#offsetOf(int)}.
+     * @return Returns an {@link InputStream} of the MP3 file positioned at the offset.
+     * @see SongInput
+     */
+    public InputStream getInputStream(long offset) throws IOException {
+        return SongInput.open(this, offset);
+    }
+
+    /**
+     * Returns the {@link FrameIndex} of the MP3 file if it was already built. Never reads the file, so it can be
+     * called from the playback engine thread.
+     *
+     * @return the {@link FrameIndex} of the MP3 file, or null if it wasn't built yet.
+     * @see #getFrameIndex()
+     */
+    public FrameIndex getBuiltFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * Returns the {@link FrameIndex} of the MP3 file, building it on the first call.
+     *
+     * @return the {@link FrameIndex} of the MP3 file.
+     * @throws IOException if the file can't be read.
+     * @see FrameIndex
+     */
+    public FrameIndex getFrameIndex() throws IOException {
+        FrameIndex index = frameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = frameIndex;
+                if (index == null) frameIndex = index = FrameIndex.build(this.getFilePath());
+            }
+        }
+        return index;
+    }
 }
@@ -0,0 +1,203 @@
+package support;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opens the bytes of a {@link Song} for decoding, either streamed from disk through a
+ * {@link java.io.BufferedInputStream} or as a view of a memory-mapped copy of the file.<br>
+ * In mapped mode the file is mapped once while it is in use, so reopening it or seeking just creates a new view
+ * of the same {@link java.nio.MappedByteBuffer}, with no extra syscalls. Only the most recently opened files keep
+ * their mapping (the song playing, the one prefetched after it and a few before them); older mappings are dropped
+ * and released by the garbage collector once their views are closed. Files larger than the configured limit are
+ * always streamed.<br>
+ * The mode is set with the "player.inputMode" system property ("streaming", the default, or "mapped"), the
+ * limit with "player.mappedInputMaxBytes" (default 256 MB) and the number of mappings kept with
+ * "player.mappedFiles" (default 4).<br>
+ * For each mode, the number of read calls that reach the file and the number of bytes copied between buffers
+ * are counted, so both modes can be compared.
+ *
+ * @see Song#getInputStream(long)
+ */
+public final class SongInput {
+
+    public enum Mode {STREAMING, MAPPED}
+
+    private static final Mode MODE = "mapped".equalsIgnoreCase(System.getProperty("player.inputMode"))
+            ? Mode.MAPPED : Mode.STREAMING;
+    private static final long MAPPED_MAX_BYTES = Long.getLong("player.mappedInputMaxBytes", 256L * 1024 * 1024);
+    private static final int MAPPED_FILES = Math.max(1, Integer.getInteger("player.mappedFiles", 4));
+
+    // mappings by file path, least recently opened first; guarded by itself
+    private static final Map<String, MappedByteBuffer> MAPPINGS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MappedByteBuffer> eldest) {
+            return size() > MAPPED_FILES;
+        }
+    };
+
+    private static final LongAdder[] READ_CALLS = {new LongAdder(), new LongAdder()};
+    private static final LongAdder[] BYTES_COPIED = {new LongAdder(), new LongAdder()};
+
+    private SongInput() {
+    }
+
+    /**
+     * Opens the file of the song starting at the specified byte offset.
+     *
+     * @param song   Song to be opened.
+     * @param offset Byte offset in the file.
+     * @return an {@link InputStream} of the file positioned at the offset.
+     * @throws IOException if the file can't be opened.
+     */
+    static InputStream open(Song song, long offset) throws IOException {
+        if (getMode() == Mode.MAPPED && new File(song.getFilePath()).length() <= MAPPED_MAX_BYTES) {
+            ByteBuffer view = map(song.getFilePath()).duplicate();
+            view.position((int) Math.min(offset, view.limit()));
+            return new MappedInputStream(view);
+        }
+
+        FileInputStream in = new CountingFileInputStream(song.getFilePath());
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new CountingBufferedInputStream(in);
+    }
+
+    /**
+     * Returns a read-only mapping of the whole file, mapping it if it isn't one of the files mapped last.
+     * Callers must use {@link MappedByteBuffer#duplicate()} so positions are not shared.
+     */
+    private static MappedByteBuffer map(String filePath) throws IOException {
+        synchronized (MAPPINGS) {
+            MappedByteBuffer buffer = MAPPINGS.get(filePath);
+            if (buffer == null) {
+                try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                MAPPINGS.put(filePath, buffer);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * @return the input mode set for this run.
+     */
+    public static Mode getMode() {
+        return MODE;
+    }
+
+    /**
+     * @param mode Input mode.
+     * @return the number of read calls that reached the file (as in read syscalls) in the specified mode.
+     */
+    public static long getReadCalls(Mode mode) {
+        return READ_CALLS[mode.ordinal()].sum();
+    }
+
+    /**
+     * @param mode Input mode.
+     * @return the number of bytes copied from the file or between buffers in the specified mode.
+     */
+    public static long getBytesCopied(Mode mode) {
+        return BYTES_COPIED[mode.ordinal()].sum();
+    }
+
+    /**
+     * Resets the counters of both modes.
+     */
+    public static void resetCounters() {
+        for (Mode mode : Mode.values()) {
+            READ_CALLS[mode.ordinal()].reset();
+            BYTES_COPIED[mode.ordinal()].reset();
+        }
+    }
+
+    private static final class CountingFileInputStream extends FileInputStream {
+        CountingFileInputStream(String path) throws FileNotFoundException {
+            super(path);
+        }
+
+        @Override
+        public int read() throws IOException {
+            READ_CALLS[Mode.STREAMING.ordinal()].increment();
+            int b = super.read();
+            if (b >= 0) BYTES_COPIED[Mode.STREAMING.ordinal()].increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            READ_CALLS[Mode.STREAMING.ordinal()].increment();
+            int read = super.read(b, off, len);
+            if (read > 0) BYTES_COPIED[Mode.STREAMING.ordinal()].add(read);
+            return read;
+        }
+    }
+
+    private static final class CountingBufferedInputStream extends BufferedInputStream {
+        CountingBufferedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) BYTES_COPIED[Mode.STREAMING.ordinal()].add(read);
+            return read;
+        }
+    }
+
+    private static final class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) return -1;
+            BYTES_COPIED[Mode.MAPPED.ordinal()].increment();
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            BYTES_COPIED[Mode.MAPPED.ordinal()].add(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
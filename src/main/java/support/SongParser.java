@@ -0,0 +1,157 @@
+package support;
+
+import com.mpatric.mp3agic.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parses MP3 files into {@link Song} objects.
+ *
+ * @see Song
+ */
+public final class SongParser {
+
+    private SongParser() {
+    }
+
+    /**
+     * True to always count every frame with a full scan, set with the "player.exactDuration" system property.
+     * Otherwise, the length is estimated by {@link DurationEstimator} and files are only fully scanned when needed.
+     */
+    private static final boolean EXACT_DURATION = Boolean.getBoolean("player.exactDuration");
+    private static final int MP3_BUFFER_LENGTH = 65536;
+
+    private static final LongAdder FILES = new LongAdder();
+    private static final LongAdder NANOS = new LongAdder();
+
+    /**
+     * Reads the ID3 tags and the length of an MP3 file and returns a {@link Song} with a new {@link UUID}.
+     * Files already in the {@link MetadataCache} with the same size and modification time are not read.
+     * This method is thread safe, so files can be parsed in parallel.
+     *
+     * @param file MP3 file.
+     * @return a {@link Song} with the information parsed from the file, or null if it is not a valid MP3.
+     * @see Song
+     * @see MetadataCache
+     */
+    public static Song parse(File file) {
+        long start = System.nanoTime();
+        try {
+            MetadataCache cache = MetadataCache.shared();
+            Song song = cache.lookup(file);
+            if (song == null) {
+                song = parseFile(file);
+                if (song != null) cache.store(song);
+            }
+            return song;
+        } finally {
+            NANOS.add(System.nanoTime() - start);
+            FILES.increment();
+        }
+    }
+
+    /**
+     * @return the average time spent in {@link #parse(File)} per file, in milliseconds, cache hits included.
+     */
+    public static double getAverageMillisPerFile() {
+        long files = FILES.sum();
+        return files == 0 ? 0 : NANOS.sum() / 1_000_000.0 / files;
+    }
+
+    /**
+     * @return the number of files passed to {@link #parse(File)}.
+     */
+    public static long getFilesParsed() {
+        return FILES.sum();
+    }
+
+    /**
+     * Returns the length formatted as 0:00:00, as shown in the queue.
+     *
+     * @param msLength Length in milliseconds.
+     * @return the formatted length.
+     */
+    static String formatLength(float msLength) {
+        Duration duration = Duration.ofMillis((long) msLength);
+        long HH = duration.toHours();
+        long MM = duration.toMinutesPart();
+        long SS = duration.toSecondsPart();
+        return String.format("%d:%02d:%02d", HH, MM, SS);
+    }
+
+    private static Song parseFile(File file) {
+        String title = "";
+        String album = "";
+        String artist = "";
+        String year = "";
+        float msLength;
+        String strLength;
+        String filePath = file.getPath();
+        int fileSize = 0;
+        try {
+            fileSize = (int) Files.size(Path.of(filePath));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        int numFrames;
+        float msPerFrame;
+
+        // Try to get the length from the headers, so only the tags need to be read
+        DurationEstimator.Estimate estimate = null;
+        if (!EXACT_DURATION) {
+            try {
+                estimate = DurationEstimator.estimate(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Try to get ID3 info
+        Mp3File mp3File = null;
+        try {
+            mp3File = new Mp3File(file, MP3_BUFFER_LENGTH, estimate == null);
+        } catch (IOException | UnsupportedTagException | InvalidDataException e) {
+            e.printStackTrace();
+        }
+        if (mp3File == null) return null;
+        if (mp3File.hasId3v1Tag()) {
+            ID3v1 id3 = mp3File.getId3v1Tag();
+            title = id3.getTitle();
+            album = id3.getAlbum();
+            artist = id3.getArtist();
+            year = id3.getYear();
+        } else if (mp3File.hasId3v2Tag()) {
+            ID3v2 id3 = mp3File.getId3v2Tag();
+            title = id3.getTitle();
+            album = id3.getAlbum();
+            artist = id3.getArtist();
+            year = id3.getYear();
+        }
+
+        if (estimate != null) {
+            numFrames = estimate.numFrames();
+            msLength = estimate.msLength();
+            msPerFrame = estimate.msPerFrame();
+        } else {
+            numFrames = mp3File.getFrameCount();
+            msLength = mp3File.getLengthInMilliseconds();
+            msPerFrame = msLength / numFrames;
+        }
+
+        strLength = formatLength(msLength);
+
+        if (title == null || title.isBlank()) title = "Untitled";
+        if (album == null || album.isBlank()) album = "Untitled";
+        if (artist == null || artist.isBlank()) artist = "Unknown";
+        if (year == null || year.isBlank()) year = "Unknown";
+
+        String uuid = UUID.randomUUID().toString();
+        return new Song(uuid, title, album, artist, year, strLength, msLength, filePath, fileSize, numFrames, msPerFrame);
+    }
+}
@@ -0,0 +1,255 @@
+package support;
+
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the background work of the player. I/O-bound tasks (imports, prefetching the next song, seeks) each
+ * get their own virtual thread, grouped in {@link Scope}s that can be cancelled together, e.g. everything
+ * prefetched for the current song when playback stops. The audio path gets dedicated platform threads, so
+ * it never waits for a carrier thread.<br>
+ * Every thread is tracked until it ends: {@link #close()} cancels and joins all of them, and exceptions
+ * thrown by tasks are not lost but handed to a single {@link ErrorHandler}.
+ */
+public final class TaskRuntime implements AutoCloseable {
+
+    /**
+     * Work run by a task. Interrupts are how tasks are cancelled, so it should stop when interrupted.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Receives every error of the background work, from any thread.
+     */
+    @FunctionalInterface
+    public interface ErrorHandler {
+        /**
+         * @param source Name of the task or thread where the error happened.
+         * @param error  The error.
+         */
+        void report(String source, Throwable error);
+    }
+
+    private static final long JOIN_MILLIS = 1000;
+
+    /**
+     * Group of tasks that are cancelled together. Can be used as an {@link Executor}.
+     */
+    public final class Scope implements Executor {
+        private final String name;
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        private Scope(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Starts a task on a new virtual thread.
+         *
+         * @param taskName Name of the task, used in the thread name and in error reports.
+         * @param task     Work to be run.
+         * @return the thread running the task.
+         * @throws RejectedExecutionException if the runtime is closed.
+         */
+        public Thread submit(String taskName, Task task) {
+            if (closed) throw new RejectedExecutionException("task runtime is closed");
+            String source = name + "/" + taskName;
+            Thread thread = Thread.ofVirtual().name(source).unstarted(() -> runTask(source, task));
+            threads.add(thread);
+            activeTasks.incrementAndGet();
+            thread.start();
+            return thread;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submit("task", command::run);
+        }
+
+        /**
+         * Interrupts every running task of this scope. Tasks can still be submitted afterwards.
+         */
+        public void cancel() {
+            for (Thread thread : threads) thread.interrupt();
+        }
+
+        /**
+         * Hands an error of this scope to the error handler of the runtime.
+         *
+         * @param taskName Name of the task where the error happened.
+         * @param error    The error.
+         */
+        public void reportError(String taskName, Throwable error) {
+            TaskRuntime.this.reportError(name + "/" + taskName, error);
+        }
+
+        /**
+         * @return the number of tasks of this scope that are running.
+         */
+        public int getActiveTasks() {
+            return threads.size();
+        }
+
+        private void runTask(String source, Task task) {
+            try {
+                task.run();
+                completedTasks.increment();
+            } catch (InterruptedException | ClosedByInterruptException ex) {
+                cancelledTasks.increment();
+            } catch (Throwable ex) {
+                failedTasks.increment();
+                TaskRuntime.this.reportError(source, ex);
+            } finally {
+                threads.remove(Thread.currentThread());
+                activeTasks.decrementAndGet();
+            }
+        }
+    }
+
+    private final ErrorHandler errorHandler;
+    private final Set<Scope> scopes = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> audioThreads = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder failedTasks = new LongAdder();
+    private final LongAdder cancelledTasks = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Constructs a {@link TaskRuntime} that prints errors to the standard error stream.
+     */
+    public TaskRuntime() {
+        this((source, error) -> {
+            System.err.println("Error in " + source + ":");
+            error.printStackTrace();
+        });
+    }
+
+    /**
+     * @param errorHandler Receives every error of the background work.
+     */
+    public TaskRuntime(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * @param name Name of the scope, used in thread names and error reports.
+     * @return a new, empty {@link Scope}.
+     */
+    public Scope newScope(String name) {
+        Scope scope = new Scope(name);
+        scopes.add(scope);
+        return scope;
+    }
+
+    /**
+     * Starts a long-lived (daemon) platform thread for the audio path, at the highest priority.
+     * An exception escaping the body is reported before the thread ends.
+     *
+     * @param name Name of the thread.
+     * @param body Loop run by the thread, which should return when interrupted.
+     * @return the started thread.
+     * @throws RejectedExecutionException if the runtime is closed.
+     */
+    public Thread startAudioThread(String name, Runnable body) {
+        if (closed) throw new RejectedExecutionException("task runtime is closed");
+        Thread thread = Thread.ofPlatform().name(name).daemon(true).priority(Thread.MAX_PRIORITY).unstarted(() -> {
+            try {
+                body.run();
+            } catch (Throwable ex) {
+                reportError(name, ex);
+            } finally {
+                audioThreads.remove(Thread.currentThread());
+            }
+        });
+        audioThreads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Hands an error to the error handler. Can be called from any thread.
+     *
+     * @param source Name of the task or thread where the error happened.
+     * @param error  The error.
+     */
+    public void reportError(String source, Throwable error) {
+        errors.increment();
+        try {
+            errorHandler.report(source, error);
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Cancels every task and audio thread and waits for them to end. Nothing can be started afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Scope scope : scopes) scope.cancel();
+        for (Thread thread : audioThreads) thread.interrupt();
+
+        long deadline = System.currentTimeMillis() + JOIN_MILLIS;
+        try {
+            for (Scope scope : scopes) {
+                for (Thread thread : scope.threads) thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            for (Thread thread : audioThreads) thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if {@link #close()} was called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of tasks running, in every scope.
+     */
+    public int getActiveTasks() {
+        return activeTasks.get();
+    }
+
+    /**
+     * @return the number of tasks that returned normally.
+     */
+    public long getCompletedTasks() {
+        return completedTasks.sum();
+    }
+
+    /**
+     * @return the number of tasks that ended with an exception other than an interrupt.
+     */
+    public long getFailedTasks() {
+        return failedTasks.sum();
+    }
+
+    /**
+     * @return the number of tasks that ended because they were interrupted.
+     */
+    public long getCancelledTasks() {
+        return cancelledTasks.sum();
+    }
+
+    /**
+     * @return the number of errors reported, by tasks or through {@link #reportError(String, Throwable)}.
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,42 @@
+package support;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ReentrantLock} that records in {@link LockStats} how long {@link #lock()} waited and how long the
+ * lock was held, counting only the outermost lock/unlock pair of each reentrant hold.<br>
+ * Time spent in {@link java.util.concurrent.locks.Condition#await()} counts as held, so conditions of this lock
+ * should only be used where that is acceptable.
+ *
+ * @see LockStats
+ */
+public class TimedLock extends ReentrantLock {
+    private static final long serialVersionUID = 1L;
+
+    private final transient LockStats stats = new LockStats();
+    private long acquiredNanos;     // written only by the owner
+
+    @Override
+    public void lock() {
+        long start = System.nanoTime();
+        boolean contended = !super.tryLock();
+        if (contended) super.lock();
+        if (getHoldCount() == 1) {
+            acquiredNanos = System.nanoTime();
+            stats.recordAcquisition(acquiredNanos - start, contended);
+        }
+    }
+
+    @Override
+    public void unlock() {
+        if (isHeldByCurrentThread() && getHoldCount() == 1) stats.recordRelease(System.nanoTime() - acquiredNanos);
+        super.unlock();
+    }
+
+    /**
+     * @return the wait and hold times of this lock.
+     */
+    public LockStats getStats() {
+        return stats;
+    }
+}
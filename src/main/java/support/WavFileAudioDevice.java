@@ -0,0 +1,127 @@
+package support;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDeviceBase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * AudioDevice that writes 16-bit PCM to a WAV file instead of a sound card. Samples are written as fast as
+ * they arrive, so playing to it takes as long as decoding. The header is written when the device is closed,
+ * once the length of the audio is known.
+ */
+public class WavFileAudioDevice extends AudioDeviceBase {
+    static final int HEADER_BYTES = 44;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path path;
+    private final int frequency;
+    private final int channels;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long dataBytes;
+
+    /**
+     * @param path      File to be written. Replaced if it exists.
+     * @param frequency Sample rate of the audio, in Hz.
+     * @param channels  Number of channels of the audio.
+     */
+    public WavFileAudioDevice(Path path, int frequency, int channels) {
+        this.path = path;
+        this.frequency = frequency;
+        this.channels = channels;
+    }
+
+    @Override
+    protected void openImpl() throws JavaLayerException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            channel.position(HEADER_BYTES);
+        } catch (IOException ex) {
+            throw new JavaLayerException("can't open " + path, ex);
+        }
+        buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        dataBytes = 0;
+    }
+
+    @Override
+    protected void writeImpl(short[] samples, int offs, int len) throws JavaLayerException {
+        try {
+            for (int i = offs; i < offs + len; i++) {
+                if (buffer.remaining() < Short.BYTES) drain();
+                buffer.putShort(samples[i]);
+            }
+        } catch (IOException ex) {
+            throw new JavaLayerException("can't write " + path, ex);
+        }
+        dataBytes += (long) len * Short.BYTES;
+    }
+
+    @Override
+    protected void flushImpl() {
+        try {
+            drain();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    protected void closeImpl() {
+        try (FileChannel output = channel) {
+            drain();
+            output.write(header(frequency, channels, dataBytes), 0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return the amount of audio written so far, in milliseconds.
+     */
+    @Override
+    public int getPosition() {
+        return (int) (dataBytes / ((long) Short.BYTES * channels) * 1000 / frequency);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Builds the header of a 16-bit PCM WAV file.
+     *
+     * @param frequency Sample rate of the audio, in Hz.
+     * @param channels  Number of channels of the audio.
+     * @param dataBytes Length of the samples that follow the header, in bytes.
+     * @return the {@value #HEADER_BYTES} bytes of the header, ready to be written.
+     */
+    static ByteBuffer header(int frequency, int channels, long dataBytes) {
+        int blockAlign = channels * Short.BYTES;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII))
+                .putInt((int) (HEADER_BYTES - 8 + dataBytes))
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII))
+                .putInt(16)
+                .putShort((short) 1)
+                .putShort((short) channels)
+                .putInt(frequency)
+                .putInt(frequency * blockAlign)
+                .putShort((short) blockAlign)
+                .putShort((short) 16)
+                .put("data".getBytes(StandardCharsets.US_ASCII))
+                .putInt((int) dataBytes);
+        return header.flip();
+    }
+}
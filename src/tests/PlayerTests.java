@@ -1,3 +1,759 @@
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.player.AudioDevice;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import support.AudioSink;
+import support.DurationEstimator;
+import support.FrameIndex;
+import support.LatencyHistogram;
+import support.MetadataCache;
+import support.PcmCache;
+import support.PcmRingBuffer;
+import support.PlayerCore;
+import support.PlayerEvent;
+import support.PlayerMonitor;
+import support.Playlist;
+import support.QueueExport;
+import support.QueueTableModel;
+import support.SeekWorker;
+import support.Song;
+import support.TaskRuntime;
+import support.TimedLock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.event.TableModelEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 class PlayerTests {
 
-}
\ No newline at end of file
+    private static final long PAUSE_MILLIS = 1000;
+    // Um núcleo girando gastaria ~1000 ms de CPU no mesmo intervalo
+    private static final long MAX_PAUSED_CPU_MILLIS = 50;
+
+    @Test
+    void idlePlaybackEngineUsesNoCpu() throws Exception {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        try (PlayerCore core = new PlayerCore(AudioSink.discard())) {
+            Thread playback = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> !before.contains(thread) && thread.getName().equals("playback-engine"))
+                    .findFirst().orElseThrow();
+
+            long cpuMillis = cpuMillisDuring(playback, PAUSE_MILLIS);
+
+            // sem música, o engine fica bloqueado na fila de comandos e acorda com o próximo comando
+            core.stop().get(1, TimeUnit.SECONDS);
+            assertTrue(cpuMillis < MAX_PAUSED_CPU_MILLIS, "idle playback engine used " + cpuMillis + " ms of CPU");
+        }
+    }
+
+    @Test
+    void pausedPlaybackEngineUsesNoCpu() throws Exception {
+        Path file = Files.createTempFile("paused", ".mp3");
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        try (PlayerCore core = new PlayerCore(AudioSink.discard())) {
+            Files.write(file, cbrMp3(20_000));
+            core.addSongs(List.of(fileSong(file, 20_000, "paused")));
+            core.play(0).get(1, TimeUnit.SECONDS);
+            core.pause().get(1, TimeUnit.SECONDS);
+            assertNotNull(core.getSongPlaying(), "a música continua aberta enquanto pausada");
+            assertEquals(0, core.getPlayingState());
+
+            // com a música pausada, nem o engine nem a saída podem ficar girando
+            Set<Thread> threads = Thread.getAllStackTraces().keySet();
+            for (String name : List.of("playback-engine", "audio-output")) {
+                Thread thread = threads.stream()
+                        .filter(t -> !before.contains(t) && t.getName().equals(name))
+                        .findFirst().orElseThrow();
+                long cpuMillis = cpuMillisDuring(thread, PAUSE_MILLIS / 2);
+                assertTrue(cpuMillis < MAX_PAUSED_CPU_MILLIS, "paused " + name + " used " + cpuMillis + " ms of CPU");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void playerCoreAppliesCommandsInOrder() throws Exception {
+        try (PlayerCore core = new PlayerCore(AudioSink.discard())) {
+            List<String> events = Collections.synchronizedList(new ArrayList<>());
+            core.addListener(event -> events.add(event.type() + " " + (event.song() == null ? "-" : event.song().getUuid()) + " " + event.index()));
+
+            // os arquivos não existem, então nada é decodificado, mas os comandos mudam o estado do mesmo jeito
+            core.addSongs(List.of(song(0), song(1), song(2)));
+            core.play(1);
+            core.remove(1);
+            core.stop().get(1, TimeUnit.SECONDS);
+
+            // a música removida estava tocando, então a seguinte, que assumiu o índice dela, começa
+            assertEquals(List.of("SONGS_ADDED - 0", "SONG_STARTED 1 1", "SONG_REMOVED 2 1", "SONG_STARTED 2 1", "STOPPED - -1"), events);
+            assertEquals(2, core.getPlaylist().size());
+            assertNull(core.getSongPlaying());
+            assertEquals(3, core.getEngine().getCommandLatency().getCount());
+        }
+    }
+
+    @Test
+    void playerMonitorExposesStateThroughJmx() throws Exception {
+        try (PlayerCore core = new PlayerCore(AudioSink.discard());
+             PlayerMonitor monitor = PlayerMonitor.register(core, null)) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(PlayerMonitor.OBJECT_NAME);
+            core.addSongs(List.of(song(0), song(1), song(2)));
+            core.play(1).get(1, TimeUnit.SECONDS);
+
+            assertEquals(3, server.getAttribute(name, "QueueLength"));
+            assertEquals("1", server.getAttribute(name, "CurrentSongUuid"));
+            // o servidor lê os atributos do próprio monitor registrado
+            assertEquals(monitor.getPlaybackState(), server.getAttribute(name, "PlaybackState"));
+            String[] queue = (String[]) server.invoke(name, "dumpQueue", null, null);
+            assertEquals(3, queue.length);
+            assertTrue(queue[1].startsWith(">") && queue[1].endsWith(" 1"), queue[1]);
+
+            core.stop().get(1, TimeUnit.SECONDS);
+            assertEquals("STOPPED", server.getAttribute(name, "PlaybackState"));
+            server.invoke(name, "resetCounters", null, null);
+            assertEquals(0, core.getEngine().getCommandLatency().getCount());
+        }
+        // fechar o monitor tira o MBean do servidor
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(PlayerMonitor.OBJECT_NAME)));
+    }
+
+    @Test
+    void flightEventsAreRecordedWithTheJfcSettings() throws Exception {
+        Path file = Files.createTempFile("player", ".jfr");
+        try (Reader settings = new InputStreamReader(PlayerTests.class.getResourceAsStream("/jfr/mp3player.jfc"));
+             Recording recording = new Recording(Configuration.create(settings))) {
+            recording.start();
+            try (PlayerCore core = new PlayerCore(AudioSink.discard())) {
+                core.addSongs(List.of(song(0), song(1)));
+                core.play(0).get(1, TimeUnit.SECONDS);
+                core.toggleShuffle();
+                core.stop().get(1, TimeUnit.SECONDS);
+            }
+            recording.stop();
+            recording.dump(file);
+
+            Set<String> types = new HashSet<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) types.add(event.getEventType().getName());
+            // o arquivo não existe, então a música é "aberta" sem bitstream, mas o evento é registrado
+            assertTrue(types.containsAll(Set.of("mp3player.SongOpen", "mp3player.ShuffleToggle")), types.toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void wavFileSinkWritesHeaderWithAudioLength() throws Exception {
+        Path path = Files.createTempFile("sink", ".wav");
+        try {
+            AudioDevice device = AudioSink.wavFile(path).createDevice(44100, 2);
+            device.open(new Decoder());
+            device.write(new short[1152 * 2], 0, 1152 * 2);
+            device.write(new short[1152 * 2], 0, 1152 * 2);
+            device.close();
+
+            ByteBuffer wav = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            int dataBytes = 2 * 1152 * 2 * Short.BYTES;
+            assertEquals(44 + dataBytes, wav.capacity());
+            assertEquals(0x46464952, wav.getInt(0));        // "RIFF"
+            assertEquals(36 + dataBytes, wav.getInt(4));
+            assertEquals(2, wav.getShort(22));
+            assertEquals(44100, wav.getInt(24));
+            assertEquals(dataBytes, wav.getInt(40));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void queueExportReportsSongsThatCantBeDecoded() throws Exception {
+        Path directory = Files.createTempDirectory("export");
+        try {
+            // arquivos inexistentes: cada música falha sem derrubar a exportação das outras
+            QueueExport export = new QueueExport(List.of(song(1), song(2)), directory, 2);
+            QueueExport.Result result = export.start().get(5, TimeUnit.SECONDS);
+
+            assertEquals(0, result.files().size());
+            assertEquals(2, result.failures().size());
+            assertEquals(2, export.getSongsDone());
+            assertEquals(1.0, export.getProgress());
+            try (var files = Files.list(directory)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    void pausedOutputThreadUsesNoCpu() throws Exception {
+        PcmRingBuffer buffer = new PcmRingBuffer(4);
+        buffer.setPaused(true);
+        buffer.put(new short[1], 1, 0, buffer.generation());
+
+        Thread output = new Thread(() -> {
+            try {
+                while (true) buffer.take((samples, length, frame) -> { });
+            } catch (Exception ignored) {
+            }
+        });
+        output.start();
+
+        long cpuMillis = cpuMillisDuring(output, PAUSE_MILLIS);
+
+        assertEquals(1, buffer.size(), "paused output thread must not drain the buffer");
+        buffer.setPaused(false);
+        buffer.awaitEmpty();
+        output.interrupt();
+        output.join(TimeUnit.SECONDS.toMillis(1));
+
+        assertTrue(cpuMillis < MAX_PAUSED_CPU_MILLIS, "paused output thread used " + cpuMillis + " ms of CPU");
+    }
+
+    @Test
+    void frameIndexFindsEveryFrameAfterTheTag() throws IOException {
+        int frames = 100;
+
+        Path file = Files.createTempFile("frame-index", ".mp3");
+        try {
+            Files.write(file, cbrMp3(frames));
+            FrameIndex index = FrameIndex.build(file.toString());
+
+            assertEquals(frames, index.size());
+            assertEquals(138, index.offsetOf(0));
+            assertEquals(138 + 417 + 418, index.offsetOf(2));
+            assertEquals(0, index.warmUpStart(0));
+            assertEquals(frames - 3, index.warmUpStart(frames - 1));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void frameIndexesAreBuiltOffTheEngineThread() throws Exception {
+        Path first = Files.write(Files.createTempFile("first", ".mp3"), cbrMp3(20_000));
+        Path second = Files.write(Files.createTempFile("second", ".mp3"), cbrMp3(100));
+        try (PlayerCore core = new PlayerCore(AudioSink.discard())) {
+            Song playing = fileSong(first, 20_000, "first");
+            Song next = fileSong(second, 100, "second");
+            core.addSongs(List.of(playing, next));
+            core.play(0).get(1, TimeUnit.SECONDS);
+            core.pause().get(1, TimeUnit.SECONDS);
+
+            // a música tocando e a seguinte são indexadas por tarefas de prefetch, não no primeiro seek
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while ((playing.getBuiltFrameIndex() == null || next.getBuiltFrameIndex() == null)
+                    && System.nanoTime() < deadline) Thread.sleep(1);
+            assertEquals(20_000, playing.getBuiltFrameIndex().size());
+            assertEquals(100, next.getBuiltFrameIndex().size());
+        } finally {
+            Files.delete(first);
+            Files.delete(second);
+        }
+    }
+
+    @Test
+    void durationEstimateOfCbrFileMatchesFrameIndex() throws IOException {
+        Path file = Files.createTempFile("duration", ".mp3");
+        try {
+            Files.write(file, cbrMp3(1000));
+            DurationEstimator.Estimate estimate = DurationEstimator.estimate(file.toFile());
+
+            assertNotNull(estimate);
+            assertEquals(FrameIndex.build(file.toString()).size(), estimate.numFrames());
+            assertEquals(1152 * 1000f / 44100, estimate.msPerFrame(), 0.001);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void queueModelFiresRowLevelEvents() {
+        Playlist queue = new Playlist();
+        for (int i = 0; i < 1_000_000; i++) queue.add(song(i));
+        QueueTableModel model = new QueueTableModel(queue);
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+
+        queue.add(song(1_000_000));
+        model.songsAdded(1_000_000, 1_000_000);
+        queue.remove(10);
+        model.songRemoved(10);
+
+        assertEquals(2, events.size());
+        assertEquals(TableModelEvent.INSERT, events.get(0).getType());
+        assertEquals(1_000_000, events.get(0).getFirstRow());
+        assertEquals(TableModelEvent.DELETE, events.get(1).getType());
+        assertEquals(10, events.get(1).getLastRow());
+        assertEquals(1_000_000, model.getRowCount());
+        assertEquals("11", model.getValueAt(10, 5));
+
+        // a fila muda no engine antes de o EDT ser avisado: a tabela continua com as linhas que conhece
+        queue.remove(0);
+        assertEquals(1_000_000, model.getRowCount());
+        assertEquals("", model.getValueAt(999_999, 0));
+        model.songRemoved(0);
+        assertEquals(999_999, model.getRowCount());
+
+        // uma remoção ainda na fila do EDT quando a fila é embaralhada é contada uma vez só
+        queue.remove(0);
+        queue.toggleShuffle(false);
+        model.queueReordered();
+        assertEquals(999_999, model.getRowCount());
+        model.songRemoved(0);
+        assertEquals(999_998, model.getRowCount());
+        assertEquals(999_998, queue.size());
+    }
+
+    @Test
+    void playlistKeepsIndexesAcrossRemovalsAndShuffle() {
+        Playlist playlist = new Playlist();
+        for (int i = 0; i < 1000; i++) playlist.add(song(i));
+        playlist.setCurrentIndex(700);
+
+        // remoções antes da música atual, inclusive o suficiente para compactar
+        for (int i = 0; i < 600; i++) assertEquals(playlist.SONG_REMOVED, playlist.remove(0));
+        assertEquals(100, playlist.getCurrentIndex());
+        assertEquals("700", playlist.get(100).getUuid());
+        assertEquals(-1, playlist.findIndex("10"));
+        assertEquals(399, playlist.findIndex("999"));
+
+        playlist.toggleShuffle(true);
+        assertEquals(0, playlist.getCurrentIndex());
+        assertEquals("700", playlist.get(0).getUuid());
+        for (int i = 0; i < playlist.size(); i++) assertEquals(i, playlist.findIndex(playlist.get(i).getUuid()));
+
+        assertEquals(playlist.SONG_REMOVED, playlist.remove("999"));
+        assertEquals(-1, playlist.findIndex("999"));
+        playlist.add(song(1000));
+        assertEquals(399, playlist.findIndex("1000"));
+
+        playlist.toggleShuffle(false);
+        assertEquals(100, playlist.getCurrentIndex());
+        assertEquals("700", playlist.get(100).getUuid());
+        assertEquals(399, playlist.findIndex("1000"));
+        assertEquals(400, playlist.size());
+    }
+
+    @Test
+    void shuffledPlaylistIsAPermutationOfTheQueue() {
+        Playlist playlist = new Playlist();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            playlist.add(song(i));
+            expected.add(String.valueOf(i));
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            playlist.remove(String.valueOf(i));
+            expected.remove(String.valueOf(i));
+        }
+
+        playlist.toggleShuffle(false);
+        // lê só o começo da ordem e altera a fila antes de o resto ser sorteado
+        for (int i = 0; i < 10; i++) assertNotNull(playlist.get(i));
+        for (int i = 1; i < 1000; i += 3) {
+            playlist.remove(String.valueOf(i));
+            expected.remove(String.valueOf(i));
+        }
+        for (int i = 1000; i < 1100; i++) {
+            playlist.add(song(i));
+            expected.add(String.valueOf(i));
+        }
+
+        Set<String> read = new HashSet<>();
+        for (int i = 0; i < playlist.size(); i++) {
+            String uuid = playlist.get(i).getUuid();
+            assertTrue(read.add(uuid));
+            assertEquals(i, playlist.findIndex(uuid));
+        }
+        assertEquals(expected, read);
+    }
+
+    @Test
+    void taskRuntimeCancelsScopesAndReportsErrors() throws Exception {
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        TaskRuntime tasks = new TaskRuntime((source, error) -> errors.add(source + ": " + error.getMessage()));
+        TaskRuntime.Scope scope = tasks.newScope("prefetch");
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread blocked = scope.submit("sleep", () -> {
+            started.countDown();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        });
+        scope.submit("fail", () -> {
+            throw new IOException("missing file");
+        }).join();
+        scope.submit("ok", () -> { }).join();
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertTrue(blocked.isVirtual());
+        assertEquals(1, tasks.getActiveTasks());
+
+        // cancelar o escopo interrompe a tarefa que ainda está rodando
+        scope.cancel();
+        blocked.join(TimeUnit.SECONDS.toMillis(1));
+        assertFalse(blocked.isAlive());
+
+        assertEquals(List.of("prefetch/fail: missing file"), errors);
+        assertEquals(0, tasks.getActiveTasks());
+        assertEquals(1, tasks.getCompletedTasks());
+        assertEquals(1, tasks.getFailedTasks());
+        assertEquals(1, tasks.getCancelledTasks());
+
+        tasks.close();
+        assertThrows(RejectedExecutionException.class, () -> scope.submit("late", () -> { }));
+    }
+
+    @Test
+    void latencyHistogramReportsPercentilesOfTheWindow() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(300, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= 1000; i++) histogram.record(i * 1000L);
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(1_000_000, snapshot.maxNanos());
+        // os buckets têm erro de no máximo 12,5%
+        assertTrue(Math.abs(snapshot.p50Nanos() - 500_000) <= 500_000 / 8, "p50 " + snapshot.p50Nanos());
+        assertTrue(Math.abs(snapshot.p99Nanos() - 990_000) <= 990_000 / 8, "p99 " + snapshot.p99Nanos());
+
+        // passada a janela, os valores antigos somem
+        Thread.sleep(400);
+        assertEquals(0, histogram.getSnapshot().count());
+        histogram.record(7);
+        assertEquals(new LatencyHistogram.Snapshot(1, 7, 7, 7), histogram.getSnapshot());
+    }
+
+    @Test
+    void pcmCacheBudgetIsRoundedDownToWholeSegments() {
+        // um segmento tem 32 frames de 1152 amostras estéreo
+        long segment = 32 * 2304 * 2;
+        assertFalse(new PcmCache(segment - 1).isEnabled());
+        assertFalse(new PcmCache().isEnabled(), "desligado sem player.pcmCacheMB");
+
+        PcmCache cache = new PcmCache(3 * segment + 10);
+        assertTrue(cache.isEnabled());
+        assertEquals(3 * segment, cache.getBudgetBytes());
+        // nada é alocado antes da primeira música
+        assertEquals(0, cache.getBytesHeld());
+        assertEquals(0.0, cache.getHitRate());
+    }
+
+    @Test
+    void pcmCacheServesAReplayedSong() throws Exception {
+        Path file = Files.write(Files.createTempFile("replay", ".mp3"), cbrMp3(200));
+        try (PlayerCore core = cachedCore(8)) {
+            PcmCache cache = core.getEngine().getPcmCache();
+            Song song = fileSong(file, 200, "replay");
+            core.addSongs(List.of(song));
+            playToEnd(core, 0);
+            // o JLayer só aceita um frame seguido de outro ou do fim do arquivo, então o último, seguido da tag
+            // ID3v1, não é devolvido pelo Bitstream
+            long decoded = core.getEngine().getFramesDecoded();
+            assertTrue(decoded == song.getNumFrames() || decoded == song.getNumFrames() - 1, "decodificados " + decoded);
+            assertEquals(0, cache.getHits(), "a primeira vez tudo é decodificado");
+            assertEquals(decoded, cache.getMisses());
+
+            // na segunda vez só o primeiro frame é decodificado, para preparar o AudioDevice
+            playToEnd(core, 0);
+            assertEquals(decoded - 1, cache.getHits());
+            assertEquals(decoded + 1, cache.getMisses());
+            assertEquals(1, cache.getSongsHeld());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void pcmCacheEvictsTheLeastRecentlyUsedSegmentsWithinItsBudget() throws Exception {
+        Path first = Files.write(Files.createTempFile("first", ".mp3"), cbrMp3(200));
+        Path second = Files.write(Files.createTempFile("second", ".mp3"), cbrMp3(200));
+        // 1 MB cabe 3 segmentos de 32 frames, menos do que uma música de 200 frames
+        try (PlayerCore core = cachedCore(1)) {
+            PcmCache cache = core.getEngine().getPcmCache();
+            core.addSongs(List.of(fileSong(first, 200, "first"), fileSong(second, 200, "second")));
+            playToEnd(core, 0);
+            assertTrue(cache.getEvictions() > 0);
+            assertEquals(cache.getBudgetBytes(), cache.getBytesHeld());
+            assertTrue(cache.getBytesHeld() <= 1024 * 1024);
+            // a segunda música tirou tudo da primeira, que foi esquecida
+            assertEquals(1, cache.getSongsHeld());
+
+            // tocando de novo em ordem, cada segmento é removido antes de ser alcançado
+            playToEnd(core, 0);
+            assertEquals(0, cache.getHits());
+            assertEquals(1, cache.getSongsHeld());
+        } finally {
+            Files.delete(first);
+            Files.delete(second);
+        }
+    }
+
+    @Test
+    void pcmCacheServesASeekBackIntoThePlayedAudio() throws Exception {
+        Path file = Files.write(Files.createTempFile("seek-back", ".mp3"), cbrMp3(20_000));
+        try (PlayerCore core = cachedCore(64)) {
+            PcmCache cache = core.getEngine().getPcmCache();
+            core.addSongs(List.of(fileSong(file, 20_000, "seek-back")));
+            core.play(0).get(1, TimeUnit.SECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (core.getEngine().getPosition() < 300 && System.nanoTime() < deadline) Thread.sleep(1);
+            core.pause().get(1, TimeUnit.SECONDS);
+            assertTrue(core.isSongOpen());
+            long hits = cache.getHits();
+
+            // volta para o segundo segmento, que já foi tocado
+            core.seek(64);
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (core.getSeeksExecuted() < 1 && System.nanoTime() < deadline) Thread.sleep(1);
+            core.resume().get(1, TimeUnit.SECONDS);
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (cache.getHits() < hits + 100 && System.nanoTime() < deadline) Thread.sleep(1);
+            core.pause().get(1, TimeUnit.SECONDS);
+
+            assertTrue(cache.getHits() >= hits + 100, "hits " + hits + " -> " + cache.getHits());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Cria um núcleo com um cache de PCM do tamanho pedido, que só é lido de "player.pcmCacheMB".
+     */
+    private static PlayerCore cachedCore(long megabytes) {
+        System.setProperty("player.pcmCacheMB", String.valueOf(megabytes));
+        try {
+            return new PlayerCore(AudioSink.discard());
+        } finally {
+            System.clearProperty("player.pcmCacheMB");
+        }
+    }
+
+    private static void playToEnd(PlayerCore core, int index) throws Exception {
+        CountDownLatch stopped = new CountDownLatch(1);
+        core.addListener(event -> {
+            if (event.type() == PlayerEvent.Type.STOPPED) stopped.countDown();
+        });
+        core.play(index).get(1, TimeUnit.SECONDS);
+        assertTrue(stopped.await(5, TimeUnit.SECONDS), "a música não terminou");
+    }
+
+    @Test
+    void timedLockRecordsWaitAndHoldTimes() throws Exception {
+        TimedLock lock = new TimedLock();
+        CountDownLatch held = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                held.countDown();
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        held.await();
+
+        lock.lock();
+        try {
+            // reentrante: só o par mais externo conta
+            lock.lock();
+            lock.unlock();
+        } finally {
+            lock.unlock();
+        }
+        holder.join();
+
+        assertEquals(2, lock.getStats().getAcquisitions());
+        assertEquals(1, lock.getStats().getContendedAcquisitions());
+        assertTrue(lock.getStats().getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(lock.getStats().getMaxHoldNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void seekWorkerAppliesOnlyTheLatestTarget() throws Exception {
+        CountDownLatch firstSeekStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstSeek = new CountDownLatch(1);
+        AtomicInteger lastApplied = new AtomicInteger(-1);
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        try (TaskRuntime tasks = new TaskRuntime((source, error) -> errors.add(source + ": " + error.getMessage()))) {
+            SeekWorker worker = new SeekWorker(frame -> {
+                firstSeekStarted.countDown();
+                releaseFirstSeek.await();
+                if (frame == 1000) throw new IOException("fim do arquivo");
+                lastApplied.set(frame);
+            }, tasks.newScope("seek"));
+
+            // simula um arraste rápido enquanto o primeiro seek ainda está em andamento
+            worker.submit(0);
+            assertTrue(firstSeekStarted.await(1, TimeUnit.SECONDS));
+            for (int frame = 1; frame <= 500; frame++) worker.submit(frame);
+            releaseFirstSeek.countDown();
+            awaitExecuted(worker, 2);
+
+            assertEquals(501, worker.getRequestCount());
+            assertEquals(2, worker.getExecutedCount());
+            assertEquals(500, lastApplied.get());
+
+            // um seek que falha vai para o tratador de erros do runtime
+            worker.submit(1000);
+            awaitExecuted(worker, 3);
+            assertEquals(List.of("seek/seek-worker: fim do arquivo"), errors);
+            worker.shutdown();
+        }
+    }
+
+    private static void awaitExecuted(SeekWorker worker, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (worker.getExecutedCount() < count && System.nanoTime() < deadline) Thread.sleep(1);
+    }
+
+    @Test
+    void metadataCacheSurvivesReopenAndDetectsChangedFiles() throws IOException {
+        Path dir = Files.createTempDirectory("metadata-cache");
+        Path mp3 = Files.write(dir.resolve("song.mp3"), new byte[1000]);
+        Path cacheFile = dir.resolve("metadata.cache");
+        try {
+            Song parsed = new Song("uuid", "Título", "Album", "Artist", "2023", "0:03:00",
+                    180_000f, mp3.toString(), 1000, 6890, 26.12f);
+            MetadataCache.open(cacheFile).store(parsed);
+
+            MetadataCache reopened = MetadataCache.open(cacheFile);
+            Song cached = reopened.lookup(mp3.toFile());
+            assertNotNull(cached);
+            assertEquals("Título", cached.getTitle());
+            assertEquals(6890, cached.getNumFrames());
+            assertEquals(mp3.toString(), cached.getFilePath());
+
+            Files.setLastModifiedTime(mp3, FileTime.fromMillis(Files.getLastModifiedTime(mp3).toMillis() + 5000));
+            assertNull(reopened.lookup(mp3.toFile()));
+            assertEquals(1, reopened.getHits());
+            assertEquals(1, reopened.getMisses());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+            Files.deleteIfExists(mp3);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void metadataCacheReportsAFileThatCantBeOpened() throws IOException {
+        Path dir = Files.createTempDirectory("metadata-cache");
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        MetadataCache.setErrorHandler((source, error) -> errors.add(source));
+        try {
+            // um diretório no lugar do arquivo: o cache fica desligado, mas o erro é contado e reportado
+            MetadataCache cache = MetadataCache.open(dir);
+            assertEquals(1, cache.getErrors());
+            assertEquals(List.of("metadata-cache/open"), errors);
+            assertNull(cache.lookup(dir.toFile()));
+        } finally {
+            MetadataCache.setErrorHandler(null);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void metadataCacheKeepsStoringAfterAnInterruptedStore() throws Exception {
+        Path dir = Files.createTempDirectory("metadata-cache");
+        Path first = Files.write(dir.resolve("first.mp3"), new byte[1000]);
+        Path second = Files.write(dir.resolve("second.mp3"), new byte[2000]);
+        Path cacheFile = dir.resolve("metadata.cache");
+        try {
+            MetadataCache cache = MetadataCache.open(cacheFile);
+            // como uma thread de importação cancelada: interrompida enquanto grava
+            AtomicBoolean stillInterrupted = new AtomicBoolean();
+            Thread parser = new Thread(() -> {
+                Thread.currentThread().interrupt();
+                cache.store(new Song("1", "Primeira", "Album", "Artist", "2023", "0:03:00",
+                        180_000f, first.toString(), 1000, 6890, 26.12f));
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            });
+            parser.start();
+            parser.join();
+            assertTrue(stillInterrupted.get(), "a interrupção continua valendo para quem chamou");
+
+            // o canal fechado pela interrupção não pode afetar as próximas gravações
+            cache.store(new Song("2", "Segunda", "Album", "Artist", "2023", "0:03:00",
+                    180_000f, second.toString(), 2000, 6890, 26.12f));
+
+            MetadataCache reopened = MetadataCache.open(cacheFile);
+            assertEquals("Primeira", reopened.lookup(first.toFile()).getTitle());
+            assertEquals("Segunda", reopened.lookup(second.toFile()).getTitle());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+            Files.delete(dir);
+        }
+    }
+
+    private static Song fileSong(Path file, int frames, String uuid) throws IOException {
+        float msPerFrame = 1152 * 1000f / 44100;
+        return new Song(uuid, uuid, "Album", "Artist", "2023", "0:00:00", frames * msPerFrame, file.toString(),
+                (int) Files.size(file), frames, msPerFrame);
+    }
+
+    private static Song song(int i) {
+        return new Song(String.valueOf(i), "Title " + i, "Album", "Artist", "2023", "0:03:00",
+                180_000f, "/music/" + i + ".mp3", 3_000_000, 6890, 26.12f);
+    }
+
+    /**
+     * Gera um MP3 sintético CBR: tag ID3v2 de 128 bytes, frames MPEG-1 Layer III de 128 kbps a 44100 Hz
+     * (417 bytes, 418 com padding, como um encoder faria para chegar a 417,96 bytes por frame) e uma tag ID3v1.
+     */
+    private static byte[] cbrMp3(int frames) {
+        ByteArrayOutputStream mp3 = new ByteArrayOutputStream();
+        mp3.write(new byte[]{'I', 'D', '3', 3, 0, 0, 0, 0, 1, 0}, 0, 10);
+        mp3.write(new byte[128], 0, 128);
+        int remainder = 0;
+        for (int i = 0; i < frames; i++) {
+            remainder += 144 * 128000 % 44100;
+            int padding = remainder >= 44100 ? 1 : 0;
+            if (padding == 1) remainder -= 44100;
+            byte[] frame = new byte[417 + padding];
+            frame[0] = (byte) 0xFF;
+            frame[1] = (byte) 0xFB;
+            frame[2] = (byte) (0x90 | padding << 1);
+            mp3.write(frame, 0, frame.length);
+        }
+        mp3.write("TAG".getBytes(), 0, 3);
+        mp3.write(new byte[125], 0, 125);
+        return mp3.toByteArray();
+    }
+
+    private static long cpuMillisDuring(Thread thread, long millis) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadCpuTime(thread.threadId());
+        Thread.sleep(millis);
+        long after = threads.getThreadCpuTime(thread.threadId());
+        return TimeUnit.NANOSECONDS.toMillis(after - before);
+    }
+}